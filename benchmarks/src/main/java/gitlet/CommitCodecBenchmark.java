@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of writing a commit to its stored form and reading it back. Commits are stored
+ *  with Commit.encode and read with Commit.decode; their size does not depend on the number
+ *  of files, which are in the commit's tree, so a small repository is enough.
+ *
+ *  @author Xingrong Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommitCodecBenchmark {
+
+    private SyntheticRepository repo;
+    private Commit commit;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        repo = new SyntheticRepository(1, 2);
+        commit = Commit.getCommitByID(repo.head);
+        encoded = commit.encode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repo.delete();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return commit.encode();
+    }
+
+    @Benchmark
+    public Commit decode() {
+        return Commit.decode(encoded);
+    }
+}
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of the line diff used by diff and merge, on a file of the given number of lines
+ *  and two versions of it, each with one line in a hundred changed at random.
+ *
+ *  @author Xingrong Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+
+    @Param({"1000", "100000"})
+    public int lines;
+
+    private final Random random = new Random(61);
+    private byte[] base;
+    private byte[] ours;
+    private byte[] theirs;
+    private Diff.Lines[] split;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] baseLines = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            baseLines[i] = "line " + random.nextInt() + "\n";
+        }
+        base = String.join("", baseLines).getBytes(StandardCharsets.UTF_8);
+        ours = change(baseLines);
+        theirs = change(baseLines);
+        split = Diff.split(base, ours, theirs);
+    }
+
+    /* Return the lines of base joined, with one line in a hundred replaced. */
+    private byte[] change(String[] baseLines) {
+        String[] result = baseLines.clone();
+        for (int i = 0; i < Math.max(1, lines / 100); i += 1) {
+            result[random.nextInt(lines)] = "changed " + random.nextInt() + "\n";
+        }
+        return String.join("", result).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Results are given to the blackhole, since Diff's classes cannot be named outside gitlet. */
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        blackhole.consume(Diff.split(base, ours, theirs));
+    }
+
+    @Benchmark
+    public void diff(Blackhole blackhole) {
+        blackhole.consume(Diff.diff(split[0], split[1]));
+    }
+
+    @Benchmark
+    public boolean merge() throws IOException {
+        return LineMerge.merge(split[0], split[1], split[2], OutputStream.nullOutputStream());
+    }
+}
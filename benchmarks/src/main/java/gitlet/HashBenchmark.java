@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Utils.sha1, on contents of the given number of bytes held in memory, held in a
+ *  String and read from a file, and of the conversion of IDs to hexadecimal. The "baseline"
+ *  benchmarks run the former implementation, which took a new MessageDigest for every hash,
+ *  encoded Strings into new arrays, read files through a new buffer and formatted the digest
+ *  with a Formatter, for comparison.
+ *
+ *  @author Xingrong Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    @Param({"64", "4096", "1048576"})
+    public int size;
+
+    private byte[] contents;
+    private String text;
+    private File file;
+    private byte[] id;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        contents = new byte[size];
+        Random random = new Random(61);
+        random.nextBytes(contents);
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i += 1) {
+            chars[i] = (char) (' ' + random.nextInt(95));
+        }
+        text = new String(chars);
+        id = new byte[ObjectId.LENGTH];
+        random.nextBytes(id);
+        file = File.createTempFile("gitlet-bench", ".bin");
+        Utils.writeContents(file, (Object) contents);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1((Object) contents);
+    }
+
+    @Benchmark
+    public String sha1BytesBaseline() throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(contents);
+        return formatHex(md.digest());
+    }
+
+    @Benchmark
+    public String sha1String() {
+        return Utils.sha1(text);
+    }
+
+    @Benchmark
+    public String sha1StringBaseline() throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(text.getBytes(StandardCharsets.UTF_8));
+        return formatHex(md.digest());
+    }
+
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1(file);
+    }
+
+    @Benchmark
+    public String sha1FileBaseline() throws NoSuchAlgorithmException, IOException {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Utils.IO_BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
+        return formatHex(md.digest());
+    }
+
+    @Benchmark
+    public String toHex() {
+        return Utils.toHex(id);
+    }
+
+    @Benchmark
+    public String toHexBaseline() {
+        return formatHex(id);
+    }
+
+    @Benchmark
+    public ObjectId objectId() {
+        return ObjectId.fromBytes(id, 0);
+    }
+
+    private static String formatHex(byte[] bytes) {
+        Formatter result = new Formatter();
+        for (byte b : bytes) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of the commands reading a whole repository, on a SyntheticRepository of the
+ *  given number of files whose master branch is the given number of commits deep.
+ *
+ *  Commits, trees and the staging area are read by the first invocation and cached by the
+ *  later ones, the way a running Daemon keeps them; the numbers are those of a warm repository.
+ *
+ *  @author Xingrong Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int files;
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private SyntheticRepository repo;
+    private Commit initial;
+    private Commit base;
+    private Commit head;
+    private Commit headParent;
+    private Staged staged;
+    /* Whether the working directory holds the files of head, or else those of base. */
+    private boolean atHead = true;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        repo = new SyntheticRepository(files, depth);
+        initial = Commit.getCommitByID(repo.initial);
+        base = Commit.getCommitByID(repo.base);
+        head = Commit.getCommitByID(repo.head);
+        headParent = Commit.getCommitByID(head.getParent());
+        staged = Staged.getStaged();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repo.delete();
+    }
+
+    /* The status command: compare the working directory with the head commit and the index. */
+    @Benchmark
+    public void reviewChange(Blackhole blackhole) {
+        List<String> modified = new ArrayList<>();
+        List<String> untracked = new ArrayList<>();
+        Staged.getStaged().reviewChange(modified, untracked);
+        blackhole.consume(modified);
+        blackhole.consume(untracked);
+    }
+
+    /* Switch the working directory between head and base, which are depth / 2 commits apart. */
+    @Benchmark
+    public void checkout() {
+        if (atHead) {
+            base.checkout(head, staged);
+        } else {
+            head.checkout(base, staged);
+        }
+        atHead = !atHead;
+    }
+
+    /* Compare two consecutive commits, which differ in one file in a hundred. */
+    @Benchmark
+    public Map<String, String> compareDiffParent() {
+        return headParent.compareDiff(head);
+    }
+
+    /* Compare the first commit with the head, which differ in up to all files. */
+    @Benchmark
+    public Map<String, String> compareDiffInitial() {
+        return initial.compareDiff(head);
+    }
+
+    /* Find the commit master and side split from. */
+    @Benchmark
+    public String latestCommonAncestor() {
+        return Commit.latestCommonAncestor(repo.head, repo.side);
+    }
+}
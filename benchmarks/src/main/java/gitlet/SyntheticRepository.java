@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Builds a repository of given size in a temporary directory, for the benchmarks to run on.
+ *
+ *  The first commit adds the given number of files, 64 to a directory, each of about 2 KB of
+ *  text. Every later commit of the master branch changes one file in a hundred, until the
+ *  branch is the given number of commits deep. The branch "side" starts halfway down master
+ *  and has half as many commits of its own. The contents are generated from a fixed seed, so
+ *  that the same sizes always give the same repository.
+ *
+ *  The repository is built by gitlet commands, run with Main.execute. Since the location of
+ *  the repository is fixed when gitlet's classes are loaded (see Repository.CWD), a JVM can
+ *  only hold one; JMH forks a new JVM for every benchmark and set of parameters.
+ *
+ *  @author Xingrong Chen
+ */
+class SyntheticRepository {
+    private static final int FILES_PER_DIR = 64;
+    private static final int LINES_PER_FILE = 40;
+    private static final int LINE_LENGTH = 50;
+
+    /* The working directory of the repository. */
+    final File dir;
+    /* The IDs of the first commit, of the commit side starts from and of the heads of master and
+     * side. */
+    final String initial;
+    final String base;
+    final String head;
+    final String side;
+
+    private final Random random = new Random(61);
+    private final List<String> files = new ArrayList<>();
+
+    /* Build a repository of files files whose master branch is depth commits deep. */
+    SyntheticRepository(int files, int depth) throws IOException {
+        if (files < 1 || depth < 2) {
+            throw new IllegalArgumentException("A repository needs at least 1 file and 2 commits.");
+        }
+        dir = Files.createTempDirectory("gitlet-bench").toFile().getCanonicalFile();
+        System.setProperty("user.dir", dir.getPath());
+        if (!Repository.CWD.equals(dir)) {
+            throw new IllegalStateException("Gitlet was loaded in another directory, benchmarks "
+                    + "must run in a forked JVM.");
+        }
+        run("init");
+        /* Syncing every commit only slows the setup down. */
+        Utils.writeContents(Config.CONFIG, "core.fsync=false\n");
+        Config.reload();
+
+        List<String> add = new ArrayList<>();
+        add.add("add");
+        for (int i = 0; i < files; i += 1) {
+            String path = String.format("d%03d/f%05d.txt", i / FILES_PER_DIR, i);
+            this.files.add(path);
+            add.add(path);
+            File file = Utils.join(dir, path);
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, text(LINES_PER_FILE));
+        }
+        run(add.toArray(new String[0]));
+        run("commit", "commit 1");
+        initial = Branch.getHeadId();
+
+        for (int i = 2; i <= depth / 2; i += 1) {
+            change("commit " + i);
+        }
+        base = Branch.getHeadId();
+        run("branch", "side");
+        for (int i = Math.max(2, depth / 2 + 1); i <= depth; i += 1) {
+            change("commit " + i);
+        }
+        head = Branch.getHeadId();
+
+        run("checkout", "side");
+        for (int i = 1; i <= depth / 2; i += 1) {
+            change("side commit " + i);
+        }
+        side = Branch.getHeadId();
+        run("checkout", "master");
+    }
+
+    /* Execute the gitlet command given by args, which must succeed. */
+    static void run(String... args) {
+        int status = Main.execute(args);
+        if (status != 0) {
+            throw new IllegalStateException("gitlet " + args[0] + " exited with status " + status);
+        }
+    }
+
+    /* Delete the repository and its working directory. */
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /* Append a line to one file in a hundred, chosen at random, and commit them with message msg. */
+    private void change(String msg) {
+        List<String> add = new ArrayList<>();
+        add.add("add");
+        for (int i = 0; i < Math.max(1, files.size() / 100); i += 1) {
+            String path = files.get(random.nextInt(files.size()));
+            File file = Utils.join(dir, path);
+            Utils.writeContents(file, Utils.readContents(file), text(1));
+            add.add(path);
+        }
+        run(add.toArray(new String[0]));
+        run("commit", msg);
+    }
+
+    /* Return count random lines of lower-case words. */
+    private String text(int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            for (int j = 0; j < LINE_LENGTH; j += 1) {
+                result.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Building blocks of the binary formats gitlet stores its metadata in.
+ *  Every format starts with a two-byte magic and a version byte; lengths and counts
+ *  are varints, strings are length-prefixed UTF-8, object ids are their 20 raw bytes.
+ *
+ *  @author Xingrong Chen
+ */
+class BinaryFormat {
+
+    /** First byte of the output of java.io.ObjectOutputStream, which older versions
+     *  of gitlet stored commits and the staging area with. */
+    static final int JAVA_SERIALIZATION = 0xAC;
+
+    /* Return if data was written by java serialization rather than a BinaryFormat.Writer. */
+    static boolean isJavaSerialized(byte[] data) {
+        return data.length > 1 && (data[0] & 0xff) == JAVA_SERIALIZATION && (data[1] & 0xff) == 0xED;
+    }
+
+    /** Accumulates a binary record. */
+    static class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        /* Start a record with the given two-character magic and version. */
+        Writer(String magic, int version) {
+            out.write(magic.charAt(0));
+            out.write(magic.charAt(1));
+            out.write(version);
+        }
+
+        Writer writeByte(int value) {
+            out.write(value);
+            return this;
+        }
+
+        Writer writeVarint(long value) {
+            Delta.writeVarint(out, value);
+            return this;
+        }
+
+        Writer writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+            return this;
+        }
+
+        Writer writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /* Write a hexadecimal SHA-1 id as its 20 raw bytes. */
+        Writer writeId(String id) {
+            byte[] bytes = Utils.fromHex(id);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /** Reads back a record written by a Writer. */
+    static class Reader {
+        private final byte[] data;
+        private int pos;
+        private final int version;
+
+        /* Start reading a record, which must begin with the given magic. */
+        Reader(byte[] data, String magic) {
+            this.data = data;
+            if (data.length < 3 || data[0] != magic.charAt(0) || data[1] != magic.charAt(1)) {
+                throw Utils.error("Unrecognized %s record.", magic);
+            }
+            version = data[2];
+            pos = 3;
+        }
+
+        /* Return the version the record was written with. */
+        int version() {
+            return version;
+        }
+
+        int readByte() {
+            check(1);
+            return data[pos++] & 0xff;
+        }
+
+        long readVarint() {
+            int[] at = {pos};
+            long value = Delta.readVarint(data, at);
+            pos = at[0];
+            check(0);
+            return value;
+        }
+
+        int readCount() {
+            long value = readVarint();
+            if (value > data.length - pos) {
+                throw Utils.error("Corrupt record.");
+            }
+            return (int) value;
+        }
+
+        long readLong() {
+            check(8);
+            long value = 0;
+            for (int k = 0; k < 8; k += 1) {
+                value = (value << 8) | (data[pos++] & 0xff);
+            }
+            return value;
+        }
+
+        String readString() {
+            int length = readCount();
+            check(length);
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        /* Read 20 raw bytes as a hexadecimal SHA-1 id. */
+        String readId() {
+            check(PackIndex.ID_LENGTH);
+            byte[] id = new byte[PackIndex.ID_LENGTH];
+            System.arraycopy(data, pos, id, 0, id.length);
+            pos += id.length;
+            return Utils.toHex(id);
+        }
+
+        private void check(int length) {
+            if (pos + length > data.length) {
+                throw Utils.error("Truncated record.");
+            }
+        }
+    }
+}
@@ -7,7 +7,6 @@ import static gitlet.Repository.GITLET_DIR;
 import static gitlet.Repository.HEAD;
 import static gitlet.Repository.COMMITS;
 import static gitlet.Utils.join;
-import static gitlet.Utils.writeContents;
 import static gitlet.Utils.readContentsAsString;
 import static gitlet.Utils.plainFilenamesIn;
 
@@ -23,34 +22,35 @@ public class Branch {
         File head = join(BRANCH, branchName);
         if (head.exists()) {
             System.out.println("A branch with provided name already exists.");
-            System.exit(1);
+            Utils.exit(1);
         }
-        writeContents(head, commitId);
+        Durable.updateRef(head, null, commitId);
     }
 
     public static void switchTo(String branchName) {
-        writeContents(HEAD, branchName);
+        Durable.updateRef(HEAD, null, branchName);
     }
 
     /* Update the head pointer of current branch. */
     public static void updateHead(String commmitID) {
-        writeContents(join(BRANCH, readContentsAsString(HEAD)), commmitID);
+        Durable.updateRef(join(BRANCH, readContentsAsString(HEAD)), null, commmitID);
     }
 
-    private static void updateHead(String branchName, String commitID) {
-        writeContents(join(BRANCH, branchName), commitID);
-    }
-    /* Update the head commit of current active branch,
-       and store the sha1 hash of that commit in .gitlet/commits. */
+    /* Store the sha1 hash of head in .gitlet/commits, then make it the head commit of current
+       active branch, unless another process moved the branch away from the parent of head. */
     public static void storeHead(Commit head) {
-        byte[] serializedHead =  Utils.serialize(head);
+        byte[] serializedHead = head.encode();
         String headID = Utils.sha1(serializedHead);
-        // get the current branch
+        /* The commit, and the trees and blobs it refers to, are on disk before the branch names it.
+         * So are its records in the commit graph and the metadata log, which are synced in the
+         * same batch; both are rebuilt from the commits if a crash tears them anyway. */
+        Durable.write(join(COMMITS, headID), serializedHead);
+        Trace.objectWritten();
+        Commit.cache(headID, head, serializedHead.length);
+        CommitGraph.add(headID, head);
+        CommitMeta.add(headID, head);
         String curBranch = Utils.readContentsAsString(HEAD);
-        updateHead(curBranch, headID);
-        /* store this commit in directory .getlet/commits, since commit object has been serialized,
-        * we use writeContents method here*/
-        Utils.writeContents(join(COMMITS, headID), serializedHead);
+        Durable.updateRef(join(BRANCH, curBranch), head.getParent(), headID);
     }
 
     /* Get the sha1id of the commit at the front of current active branch. */
@@ -58,12 +58,15 @@ public class Branch {
         return getHeadId(readContentsAsString(HEAD));
     }
 
+    @SuppressWarnings("try")
     public static String getHeadId(String branchName) {
-        if (!join(BRANCH, branchName).exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(1);
+        try (Trace.Span span = Trace.start(Trace.REFS)) {
+            if (!join(BRANCH, branchName).exists()) {
+                System.out.println("No such branch exists.");
+                Utils.exit(1);
+            }
+            return Utils.readContentsAsString(join(BRANCH, branchName));
         }
-        return Utils.readContentsAsString(join(BRANCH, branchName));
     }
     /* Get the HEAD commit of current branch*/
     public static Commit getHead() {
@@ -80,7 +83,8 @@ public class Branch {
         System.out.println("*" + curBranch);
         assert branches != null;
         for (String branch : branches) {
-            if (!branch.equals(curBranch)) {
+            /* Skip the lock file of a branch being updated, see Durable. */
+            if (!branch.equals(curBranch) && !branch.endsWith(".lock")) {
                 System.out.println(branch);
             }
         }
@@ -89,11 +93,11 @@ public class Branch {
     public static void deleteBranch(String branchName) {
         if (!join(BRANCH, branchName).exists()) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(1);
+            Utils.exit(1);
         }
         if (readContentsAsString(HEAD).equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
-            System.exit(1);
+            Utils.exit(1);
         }
         join(BRANCH, branchName).delete();
     }
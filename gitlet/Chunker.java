@@ -0,0 +1,202 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/** Stores large blobs as chunks cut at content-defined boundaries, so that versions of a large
+ *  file which differ in a few places share most of their chunks, and each shared chunk is stored
+ *  once. Files larger than chunk.threshold bytes are chunked when they are added.
+ *
+ *  Boundaries are found with FastCDC: a gear hash is rolled over the bytes, and a chunk ends
+ *  where the top bits of the hash are all zero. Since the hash only depends on the last 64
+ *  bytes, a change to the file only moves the boundaries near it. Chunks are at least a
+ *  quarter and at most eight times chunk.averageSize bytes long; a stricter condition before
+ *  the average size and a looser one after it keep most chunks close to it.
+ *
+ *  A chunked blob is stored under its usual ID, the SHA-1 hash of its whole contents, as a
+ *  manifest listing the IDs and lengths of its chunks; each chunk is stored as an object of its
+ *  own (see ObjectStore). Reading the blob streams its chunks one after the other.
+ *
+ *  @author Xingrong Chen
+ */
+class Chunker {
+    private static final String MAGIC = "GK";
+    private static final int VERSION = 1;
+
+    /* Random values of the gear hash, one for each byte value; fixed, so that the same contents
+     * are always cut at the same places. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /* Return whether a file of given size is stored in chunks. */
+    static boolean chunked(long size) {
+        return size > Config.getInt("chunk.threshold", 8 << 20);
+    }
+
+    /* Store the chunks of file as objects, and return the manifest listing them. */
+    static byte[] split(File file) {
+        int average = Config.getInt("chunk.averageSize", 1 << 20);
+        if (average < 256 || average > 1 << 24) {
+            throw Utils.error("Invalid value for chunk.averageSize: %d", average);
+        }
+        List<String> ids = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Cutter cutter = new Cutter(in, average);
+            while (cutter.next()) {
+                byte[] data = cutter.buffer;
+                String id = Utils.sha1(ByteBuffer.wrap(data, cutter.start, cutter.length));
+                ObjectStore.put(id, new ByteArrayInputStream(data, cutter.start, cutter.length));
+                ids.add(id);
+                lengths.add(cutter.length);
+                size += cutter.length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        BinaryFormat.Writer out = new BinaryFormat.Writer(MAGIC, VERSION);
+        out.writeLong(size);
+        out.writeVarint(ids.size());
+        for (int i = 0; i < ids.size(); i += 1) {
+            out.writeId(ids.get(i));
+            out.writeVarint(lengths.get(i));
+        }
+        return out.toByteArray();
+    }
+
+    /* Return the IDs of the chunks listed by manifest, in order. */
+    static List<String> chunkIds(byte[] manifest) {
+        BinaryFormat.Reader in = new BinaryFormat.Reader(manifest, MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported chunk manifest version %d.", in.version());
+        }
+        in.readLong();
+        int count = in.readCount();
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            ids.add(in.readId());
+            in.readVarint();
+        }
+        return ids;
+    }
+
+    /* Return a stream of the contents of the blob whose manifest is given. Each chunk is only
+     * opened once the one before it was read to its end. */
+    static InputStream join(byte[] manifest) {
+        List<String> ids = chunkIds(manifest);
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < ids.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (next >= ids.size()) {
+                    throw new NoSuchElementException();
+                }
+                next += 1;
+                return ObjectStore.open(ids.get(next - 1));
+            }
+        });
+    }
+
+    /** Cuts the bytes of a stream into chunks. The bytes are read into a buffer twice as long as
+     *  the longest chunk, which is moved back to its start once less than a chunk is left. */
+    private static class Cutter {
+        private final InputStream in;
+        private final int min;
+        private final int average;
+        private final int max;
+        /* Masks of the bits which must be 0 at a boundary before and after the average size. */
+        private final long strictMask;
+        private final long looseMask;
+        private final byte[] buffer;
+        /* The bytes read and not yet returned in a chunk are buffer[start + length .. end - 1]. */
+        private int start;
+        private int length;
+        private int end;
+        private boolean eof;
+
+        Cutter(InputStream in, int average) {
+            this.in = in;
+            this.average = average;
+            min = average / 4;
+            max = average * 8;
+            int bits = 31 - Integer.numberOfLeadingZeros(average);
+            strictMask = -1L << (64 - (bits + 2));
+            looseMask = -1L << (64 - (bits - 2));
+            buffer = new byte[2 * max];
+        }
+
+        /* Find the next chunk, buffer[start .. start + length - 1], and return whether there
+         * is one. */
+        boolean next() throws IOException {
+            start += length;
+            length = 0;
+            if (end - start < max && !eof) {
+                if (buffer.length - start < max) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                while (end < buffer.length && !eof) {
+                    int n = in.read(buffer, end, buffer.length - end);
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        end += n;
+                    }
+                }
+            }
+            if (start == end) {
+                return false;
+            }
+            length = cut(end - start);
+            return true;
+        }
+
+        /* Return the length of the chunk starting at start, out of the available bytes left. */
+        private int cut(int available) {
+            if (available <= min) {
+                return available;
+            }
+            int normal = Math.min(average, available);
+            int last = Math.min(max, available);
+            long hash = 0;
+            int i = min;
+            for (; i < normal; i += 1) {
+                hash = (hash << 1) + GEAR[buffer[start + i] & 0xff];
+                if ((hash & strictMask) == 0) {
+                    return i + 1;
+                }
+            }
+            for (; i < last; i += 1) {
+                hash = (hash << 1) + GEAR[buffer[start + i] & 0xff];
+                if ((hash & looseMask) == 0) {
+                    return i + 1;
+                }
+            }
+            return last;
+        }
+    }
+}
@@ -1,39 +1,64 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
-import static gitlet.Repository.BLOBS;
 import static gitlet.Repository.COMMITS;
 import static gitlet.Repository.CWD;
+import static gitlet.Utils.deserialize;
 import static gitlet.Utils.join;
 import static gitlet.Utils.plainFilenamesIn;
-import static gitlet.Utils.readContentsAsString;
-import static gitlet.Utils.readObject;
-import static gitlet.Utils.writeContents;
 
 /** Represents a gitlet commit object
  *  which includes metadata of a commit (data, commit message, reference to parent commit),
  *  also contains some methods to create a new commit, get the head commit object of each branch,
  *  and display metadata of a specific commit.
  *
+ *  A commit is stored as magic "GC", a version byte, the message, the parents, the
+ *  timestamp in milliseconds and the id of the tree of its files, see encode and Tree.
+ *  Version 1 commits list every (file name, blob) entry instead of a tree, and commits
+ *  written with java serialization by older versions are still decoded; their IDs are the
+ *  hash of those bytes, so they are never rewritten. The tree of such a commit is built
+ *  from its entries when it is first needed.
+ *
  *  @author Xingrong Chen
  */
 public class Commit implements Serializable {
 
+    /* Fixed so that commits written by earlier versions of this class stay readable. */
+    private static final long serialVersionUID = -656193757857176997L;
+
+    private static final String MAGIC = "GC";
+    private static final int VERSION = 2;
+    /* Version which stored the file entries of a commit instead of its tree. */
+    private static final int FLAT_VERSION = 1;
+
+    /* Commits decoded by getCommitByID, bounded by the core.commitCacheSize setting in bytes. */
+    private static final CommitCache CACHE = new CommitCache(Config.getInt("core.commitCacheSize", 32 << 20));
+
     /** Commit message. */
     private final String message;
     /* Reference (SHA-1 hash) to parent commit object. */
     private final String parent;
     /* When this commit was created, date of initial commit is always the (Unix) Epoch. */
     private final Date commitDate;
-    /* Maps the file name to the blob reference (SHA-1 hash). */
-    private final Map<String, String> contentMapping;
+    /* Maps the path of each file to the blob reference (SHA-1 hash), read from tree when needed. */
+    private Map<String, String> contentMapping;
+    /* Reference to the tree of the files of this commit, built from contentMapping when needed. */
+    private String tree;
     /* A merged commit will have the second parent.*/
     private String secondParent = null;
 
@@ -48,137 +73,316 @@ public class Commit implements Serializable {
         contentMapping = new TreeMap<>();
     }
 
+    private Commit(String msg, String parent, String secondParent, Date commitDate) {
+        this.message = msg;
+        this.parent = parent;
+        this.secondParent = secondParent;
+        this.commitDate = commitDate;
+    }
+
+    /* Return the binary representation of this commit, whose SHA-1 hash is the commit ID. */
+    public byte[] encode() {
+        BinaryFormat.Writer out = new BinaryFormat.Writer(MAGIC, VERSION);
+        out.writeString(message);
+        int parents = parent == null ? 0 : secondParent == null ? 1 : 2;
+        out.writeVarint(parents);
+        if (parents > 0) {
+            out.writeId(parent);
+        }
+        if (parents > 1) {
+            out.writeId(secondParent);
+        }
+        out.writeLong(commitDate.getTime());
+        out.writeId(getTree());
+        return out.toByteArray();
+    }
+
+    /* Return the commit stored in data, in either the binary or the java serialized format. */
+    public static Commit decode(byte[] data) {
+        if (BinaryFormat.isJavaSerialized(data)) {
+            return deserialize(data, Commit.class);
+        }
+        BinaryFormat.Reader in = new BinaryFormat.Reader(data, MAGIC);
+        if (in.version() != VERSION && in.version() != FLAT_VERSION) {
+            throw Utils.error("Unsupported commit version %d.", in.version());
+        }
+        String msg = in.readString();
+        int parents = in.readCount();
+        String first = parents > 0 ? in.readId() : null;
+        String second = parents > 1 ? in.readId() : null;
+        Commit commit = new Commit(msg, first, second, new Date(in.readLong()));
+        if (in.version() == VERSION) {
+            commit.tree = in.readId();
+            return commit;
+        }
+        commit.contentMapping = new TreeMap<>();
+        int entries = in.readCount();
+        for (int i = 0; i < entries; i += 1) {
+            String file = in.readString();
+            commit.contentMapping.put(file, in.readId());
+        }
+        return commit;
+    }
+
+    /* Return the (path, blob) mapping of every file of this commit, which reads its whole tree.
+     * The mapping read from the tree is not kept, so that a cached commit stays the size of its
+     * stored form (see CommitCache); callers needing it several times hold on to it. */
     public Map<String, String> getContentMapping() {
+        if (contentMapping == null) {
+            Map<String, String> files = new TreeMap<>();
+            Tree.flatten(tree, "", files);
+            return files;
+        }
         return contentMapping;
     }
 
+    /* Return the reference of the tree of this commit. */
+    public String getTree() {
+        if (tree == null) {
+            tree = Tree.write(contentMapping);
+        }
+        return tree;
+    }
+
+    /* Return the reference of the tree this commit was stored with, or null if an older version of
+     * gitlet stored it with a flat (path, blob) mapping. */
+    String getStoredTree() {
+        return tree;
+    }
+
+    /* Return the blob of the given file in this commit, or null if it is not tracked. Only the
+     * trees along the path are read. */
+    public String blobID(String fileName) {
+        if (contentMapping != null) {
+            return contentMapping.get(fileName);
+        }
+        return Tree.find(tree, fileName);
+    }
+
     /* Return if content map of this commit contains the given file. */
     public boolean contains(String fileName) {
-        return contentMapping.containsKey(fileName);
+        return blobID(fileName) != null;
     }
     /* Return if the given file was tracked and has the same content in this commit. */
     public boolean tracked(String fileName, String contentId) {
-        return contentMapping.getOrDefault(fileName, "").equals(contentId);
+        return contentId.equals(blobID(fileName));
     }
     /* Return the reference of parent commit.*/
     public String getParent() {
         return parent;
     }
+    /* Return the reference of the merged-in parent commit, or null if this is not a merge commit.*/
+    public String getSecondParent() {
+        return secondParent;
+    }
 
     public String getMessage() {
         return message;
     }
-    /* Return the commit object with given ID.*/
+
+    public Date getCommitDate() {
+        return commitDate;
+    }
+    /* Return the commit object with given ID, packed commits are looked up first. Decoded commits
+    are kept in a cache, so callers must not modify the returned commit.*/
+    @SuppressWarnings("try")
     public static Commit getCommitByID (String ID) {
         if (ID == null) {
             return null;
         }
-        if (!join(COMMITS, ID).exists()) {
+        if (ID.length() != Utils.UID_LENGTH) {
+            System.out.println("No commit with that id exists.");
+            Utils.exit(1);
+        }
+        Commit cached = CACHE.get(ID);
+        if (cached != null) {
+            return cached;
+        }
+        if (!ID.matches("[0-9a-f]+")) {
+            System.out.println("No commit with that id exists.");
+            Utils.exit(1);
+        }
+        try (Trace.Span span = Trace.start(Trace.READ)) {
+            byte[] data = Pack.read(ID);
+            if (data == null) {
+                try {
+                    /* Read without checking for existence first, saving a stat call per lookup. */
+                    data = Files.readAllBytes(join(COMMITS, ID).toPath());
+                    Trace.objectRead();
+                } catch (NoSuchFileException | InvalidPathException excp) {
+                    System.out.println("No commit with that id exists.");
+                    Utils.exit(1);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            Commit commit = decode(data);
+            CACHE.put(ID, commit, data.length);
+            return commit;
+        }
+    }
+    /* Remember the commit which was just stored with given ID and stored form of given size,
+    so that reading it back does not decode it again.*/
+    public static void cache(String ID, Commit commit, int size) {
+        CACHE.put(ID, commit, size);
+    }
+    /* Return the hit and miss counts of the commit cache.*/
+    public static String cacheStats() {
+        return CACHE.toString();
+    }
+    /* Return the full ID of the only commit whose ID starts with the given, possibly abbreviated, ID.*/
+    @SuppressWarnings("try")
+    public static String resolveID(String prefix) {
+        if (prefix.length() == Utils.UID_LENGTH && prefix.matches("[0-9a-f]+")) {
+            return prefix;
+        }
+        try (Trace.Span span = Trace.start(Trace.REFS)) {
+            return resolvePrefix(prefix);
+        }
+    }
+
+    private static String resolvePrefix(String prefix) {
+        Set<String> matches = new TreeSet<>();
+        if (!prefix.isEmpty() && prefix.length() < Utils.UID_LENGTH && prefix.matches("[0-9a-f]+")) {
+            Pack.resolve(prefix, Pack.COMMIT, matches);
+            List<String> loose = looseCommitIds();
+            /* Loose commits are listed in order, find the first candidate by binary search. */
+            int first = Collections.binarySearch(loose, prefix);
+            for (int i = first < 0 ? -first - 1 : first; i < loose.size(); i += 1) {
+                if (!loose.get(i).startsWith(prefix)) {
+                    break;
+                }
+                matches.add(loose.get(i));
+            }
+        }
+        if (matches.isEmpty()) {
             System.out.println("No commit with that id exists.");
-            System.exit(1);
+            Utils.exit(1);
+        } else if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id.");
+            Utils.exit(1);
         }
-        return readObject(join(COMMITS, ID), Commit.class);
+        return matches.iterator().next();
+    }
+    /* Return the IDs of all commits in this repository, packed or loose, in lexicographic order.*/
+    public static List<String> allCommitIds() {
+        Set<String> ids = new TreeSet<>(Pack.commitIds());
+        ids.addAll(looseCommitIds());
+        return new ArrayList<>(ids);
+    }
+    /* Return the IDs of the loose commits, in lexicographic order. Temporary files left in
+    COMMITS by a write interrupted by a crash (see Durable) are skipped.*/
+    static List<String> looseCommitIds() {
+        List<String> names = plainFilenamesIn(COMMITS);
+        assert names != null;
+        List<String> ids = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (ObjectId.isHex(name)) {
+                ids.add(name);
+            }
+        }
+        return ids;
     }
     /* Put the file tracked in this commit to current working directory.*/
     public void checkoutFile(String fileName) {
-        if (!contentMapping.containsKey(fileName)) {
+        String fileID = blobID(fileName);
+        if (fileID == null) {
             System.out.println("File does not exist in this commit.");
-            System.exit(1);
+            Utils.exit(1);
         }
-        String fileID = contentMapping.get(fileName);
-        String fileContent = readContentsAsString(join(BLOBS, fileID));
-        writeContents(join(CWD, fileName), fileContent);
+        ObjectStore.copyTo(fileID, join(CWD, fileName));
     }
-    /* Inherit file information from parent commit, add files that were staged for addition
-    , and untrack files that were staged for removal.*/
+    /* Inherit the tree of parent commit, add files that were staged for addition
+    , and untrack files that were staged for removal. Only the trees of changed directories
+    are written.*/
     public void updateContentForCommit(Staged staged) {
-        contentMapping.putAll(getCommitByID(parent).getContentMapping());
+        Map<String, String> changes = new TreeMap<>();
         for (String file : staged.getStagedFiles()) {
             String fileID = staged.clearStageSymbol(file);
-            if (fileID.equals("remove")) {
-                contentMapping.remove(file);
-            } else {
-                contentMapping.put(file, fileID);
-            }
+            changes.put(file, fileID.equals("remove") ? null : fileID);
         }
+        tree = Tree.update(getCommitByID(parent).getTree(), changes);
+        contentMapping = null;
     }
     /* Display sha1 hash of this node, commit date and commit message.*/
     public void displayCommitNode (String nodeID) {
-        System.out.println("===");
-        System.out.println("commit" + " " + nodeID);
+        display(System.out, nodeID, parent, secondParent, commitDate, message);
+    }
+    /* Display a commit given its metadata on out, in the format of displayCommitNode.*/
+    public static void display(PrintStream out, String nodeID, String parent, String secondParent,
+                               Date commitDate, String message) {
+        out.println("===");
+        out.println("commit" + " " + nodeID);
         if (secondParent != null) {
-            System.out.printf("Merge: %s %s%n", parent.substring(0, 7), secondParent.substring(0, 7));
-        }
-        System.out.println("Date:" + " " + commitDate.toString());
-        System.out.println(message);
-        System.out.println();
-    }
-    /* Delete all files in CWD if they were tracked by this commit.*/
-    public void deleteTrackedFileInCWD () {
-        for (String file : contentMapping.keySet()) {
-            File cur = join(CWD, file);
-            if (cur.exists()) {
-                join(CWD, file).delete();
-            }
+            out.printf("Merge: %s %s%n", parent.substring(0, 7), secondParent.substring(0, 7));
         }
+        out.println("Date:" + " " + commitDate.toString());
+        out.println(message);
+        out.println();
     }
-    /* Delete all files tracked by preHead and put all files tracked by this commit to CWD.*/
-    public void checkout(Commit preHead) {
+    /* Delete the files tracked by preHead but not by this commit, and put the files of this commit
+    to CWD. Only the files which differ between the two commits, or which were modified in CWD, are
+    written, in parallel; see Parallel. The stat data of every file is recorded in staged.*/
+    public void checkout(Commit preHead, Staged staged) {
         preHead.checkUnTrackedFiles();
-        preHead.deleteTrackedFileInCWD();
-        for (String file : contentMapping.keySet()) {
-            String fileContent = readContentsAsString(join(BLOBS, contentMapping.get(file)));
-            writeContents(join(CWD, file), fileContent);
+        Map<String, String> diff = preHead.compareDiff(this);
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> file : diff.entrySet()) {
+            if (file.getValue().endsWith(",deleted")) {
+                /* Deleted before anything is written, since it may remove emptied directories. */
+                Repository.deleteWorkingFile(file.getKey());
+            } else {
+                writes.add(file.getKey());
+            }
+        }
+        /* Files which did not change between the two commits are only written if modified in CWD,
+           which is told from their stat data without reading them. */
+        Map<String, String> files = getContentMapping();
+        List<String> unchanged = new ArrayList<>();
+        for (String file : files.keySet()) {
+            if (!diff.containsKey(file)) {
+                unchanged.add(file);
+            }
+        }
+        Staged.Hashed[] hashed = new Staged.Hashed[unchanged.size()];
+        Parallel.forEach(hashed.length, i -> hashed[i] = staged.hash(unchanged.get(i)));
+        for (Staged.Hashed file : hashed) {
+            if (files.get(file.fileName).equals(file.id)) {
+                staged.record(file);
+            } else {
+                writes.add(file.fileName);
+            }
+        }
+        FileStat[] written = new FileStat[writes.size()];
+        Parallel.forEach(written.length, i -> {
+            File target = join(CWD, writes.get(i));
+            ObjectStore.copyTo(files.get(writes.get(i)), target);
+            written[i] = FileStat.of(target);
+        });
+        for (int i = 0; i < written.length; i += 1) {
+            staged.record(new Staged.Hashed(writes.get(i), written[i], files.get(writes.get(i)), false));
         }
     }
     /* Check if any files in CWD is untracked by this commit.*/
     public void checkUnTrackedFiles() {
-        List<String> filesInCWD = plainFilenamesIn(CWD);
-        assert filesInCWD != null;
-        for (String file : filesInCWD) {
-            if (!contentMapping.containsKey(file)) {
+        Map<String, String> files = getContentMapping();
+        for (String file : Repository.workingFiles()) {
+            if (!files.containsKey(file)) {
                 System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(1);
+                Utils.exit(1);
             }
         }
     }
-    /* Find the latest common ancestor of two commits.*/
+    /* Find the latest common ancestor of two commits, following both parents of merge commits.*/
     public static String latestCommonAncestor(String c1, String c2) {
-        while (!c1.equals(c2)) {
-            c1 = c1 == null ? c2 : getCommitByID(c1).getParent();
-            c2 = c2 == null ? c1 : getCommitByID(c2).getParent();
-        }
-        return c1;
+        return CommitGraph.mergeBase(c1, c2);
     }
-    /* Compare tracked files in two commits, */
+    /* Compare tracked files in two commits, map the path of each file which differs to its blob in
+    this commit followed by ",deleted", or its blob in other followed by ",added" or ",modified".
+    Directories which did not change are skipped.*/
     public Map<String, String> compareDiff(Commit other) {
         Map<String, String> res = new TreeMap<>();
-
-        Iterator<Map.Entry<String, String>> otherIter = other.getContentMapping().entrySet().iterator();
-        Iterator<Map.Entry<String, String>> thisIter = contentMapping.entrySet().iterator();
-        Map.Entry<String, String> thisFile = thisIter.hasNext() ? thisIter.next() : null;
-        Map.Entry<String, String> otherFile = otherIter.hasNext() ? otherIter.next() : null;
-
-        while (thisFile != null || otherFile != null) {
-            if (otherFile == null || (thisFile != null &&thisFile.getKey().compareTo(otherFile.getKey()) < 0)) {
-                /* File does not exist in other commit object. */
-                res.put(thisFile.getKey(), thisFile.getValue() + ",deleted");
-                thisFile = thisIter.hasNext() ? thisIter.next() : null;
-            } else if (thisFile == null || thisFile.getKey().compareTo(otherFile.getKey()) > 0) {
-                /* File does not exist in this commit object. */
-                res.put(otherFile.getKey(), otherFile.getValue() + ",added");
-                otherFile = otherIter.hasNext() ? otherIter.next() : null;
-            } else {
-                if (thisFile.getValue().equals(otherFile.getValue())) {
-                    continue;
-                } else {
-                    /* Given commit has different file content than it in this commit. */
-                    res.put(thisFile.getKey(), otherFile.getValue() + ",modified");
-                }
-                thisFile = thisIter.hasNext() ? thisIter.next() : null;
-                otherFile = otherIter.hasNext() ? otherIter.next() : null;
-            }
-        }
+        Tree.diff(getTree(), other.getTree(), "", res);
         return res;
     }
 
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Represents a bounded cache of decoded commits, so that a command reading the same commit
+ *  several times (log, merge, the head commit in add and status) decodes it only once.
+ *  The size of a commit is taken to be the size of its stored form, which it keeps to since
+ *  the files of a cached commit are read from its tree each time (see Commit.getContentMapping);
+ *  once the total exceeds the core.commitCacheSize setting, the least recently used commits
+ *  are evicted.
+ *
+ *  @author Xingrong Chen
+ */
+class CommitCache {
+
+    /* Map commit ID to the cached commit, least recently used first. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long limit;
+    private long size;
+    private long hits;
+    private long misses;
+
+    private static class Entry {
+        private final Commit commit;
+        private final int size;
+
+        Entry(Commit commit, int size) {
+            this.commit = commit;
+            this.size = size;
+        }
+    }
+
+    CommitCache(long limit) {
+        this.limit = limit;
+    }
+
+    /* Return the cached commit with given ID, or null. */
+    synchronized Commit get(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.commit;
+    }
+
+    /* Cache commit, whose stored form is size bytes long. */
+    synchronized void put(String id, Commit commit, int size) {
+        Entry old = entries.put(id, new Entry(commit, size));
+        this.size += size - (old == null ? 0 : old.size);
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        /* The commit just added is kept even if it alone exceeds the limit. */
+        while (this.size > limit && entries.size() > 1) {
+            this.size -= eldest.next().getValue().size;
+            eldest.remove();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("commit cache: %d hits, %d misses, %d commits, %d bytes",
+                hits, misses, entries.size(), size);
+    }
+}
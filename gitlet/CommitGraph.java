@@ -0,0 +1,302 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Represents the commit graph, a file listing every commit with the positions of its
+ *  parents in the file and its generation number (one more than the largest generation
+ *  of its parents, 1 for the initial commit). Ancestry queries walk this file instead
+ *  of reading and decoding commit objects.
+ *
+ *  The file starts with magic "GG", a version byte, a padding byte and the number of records,
+ *  followed by one fixed-size record per commit: the 20-byte id, the positions of the first
+ *  and second parent (-1 if absent) and the generation. Parents always come before their
+ *  children, so new commits are simply appended by Branch.storeHead, and the count is updated
+ *  after the record. The graph only caches what the commits hold: a graph whose length does
+ *  not match its count, e.g. after a crash during an append, is rebuilt from the commits.
+ *
+ *  Commits are found through commit-graph.idx, an index in the format of PackIndex mapping the
+ *  ids of the first records to their positions, whose checksum is the id of the last record it
+ *  covers. Records appended after it are searched from the end, and the index is rewritten once
+ *  there are too many of them.
+ *
+ *  @author Xingrong Chen
+ */
+class CommitGraph {
+    public static final File GRAPH = join(GITLET_DIR, "commit-graph");
+    public static final File LOOKUP = join(GITLET_DIR, "commit-graph.idx");
+
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_LENGTH = PackIndex.ID_LENGTH + 12;
+    private static final int NONE = -1;
+    /* Records after the index are searched until there are more than this many and an eighth
+     * of the records. */
+    private static final int MAX_UNINDEXED = 1024;
+
+    /* Flags used by mergeBase. */
+    private static final int FROM_FIRST = 1;
+    private static final int FROM_SECOND = 2;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    /* Index of the first records, loaded on first use. */
+    private PackIndex lookup;
+
+    private CommitGraph(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(4);
+    }
+
+    /* Record the commit which was just stored with given id. The graph is rebuilt from
+     * all commits if it does not exist yet, is torn, or does not know a parent of the commit. */
+    static void add(String id, Commit commit) {
+        if (!GRAPH.exists()) {
+            rebuild();
+            return;
+        }
+        CommitGraph graph = open();
+        if (graph.find(id) != NONE) {
+            /* Rebuilt by open, after the commit was stored. */
+            return;
+        }
+        int first = graph.find(commit.getParent());
+        int second = graph.find(commit.getSecondParent());
+        if ((commit.getParent() != null && first == NONE)
+                || (commit.getSecondParent() != null && second == NONE)) {
+            rebuild();
+            return;
+        }
+        int generation = 1 + Math.max(graph.generation(first), graph.generation(second));
+        try (FileChannel out = FileChannel.open(GRAPH.toPath(), StandardOpenOption.WRITE)) {
+            long end = HEADER_LENGTH + (long) graph.count * RECORD_LENGTH;
+            out.write(record(Utils.fromHex(id), first, second, generation), end);
+            out.write(ByteBuffer.allocate(4).putInt(0, graph.count + 1), 4);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.written(GRAPH);
+    }
+
+    /* Return the ID of the best common ancestor of the two commits with given IDs: a common
+     * ancestor which is not an ancestor of any other common ancestor. Both parents of
+     * merge commits are followed. */
+    static String mergeBase(String c1, String c2) {
+        CommitGraph graph = open();
+        int first = graph.find(c1);
+        int second = graph.find(c2);
+        if (first == NONE || second == NONE) {
+            rebuild();
+            graph = open();
+            first = graph.find(c1);
+            second = graph.find(c2);
+        }
+        return Utils.toHex(graph.id(graph.mergeBase(first, second)));
+    }
+
+    /* Walk back from both commits, highest generation first, painting each commit with the
+     * side(s) it is reachable from. A commit's ancestors all have lower generations, so the
+     * first commit painted by both sides is a best common ancestor. */
+    private int mergeBase(int first, int second) {
+        if (first == second) {
+            return first;
+        }
+        int[] flags = new int[count];
+        /* Highest generation first, later commits first among equal generations. */
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> generation(a) != generation(b)
+                ? Integer.compare(generation(b), generation(a)) : Integer.compare(b, a));
+        flags[first] = FROM_FIRST;
+        flags[second] = FROM_SECOND;
+        queue.add(first);
+        queue.add(second);
+        while (!queue.isEmpty()) {
+            int commit = queue.poll();
+            int flag = flags[commit];
+            if ((flag & (FROM_FIRST | FROM_SECOND)) == (FROM_FIRST | FROM_SECOND)) {
+                return commit;
+            }
+            for (int parent : new int[] {parent(commit, 0), parent(commit, 1)}) {
+                if (parent != NONE && (flags[parent] | flag) != flags[parent]) {
+                    /* A commit may be queued more than once, it is always read with its latest flags. */
+                    flags[parent] |= flag;
+                    queue.add(parent);
+                }
+            }
+        }
+        throw Utils.error("Commits have no common ancestor.");
+    }
+
+    /* Return the position of the commit with given ID, or NONE. The records after the index
+     * are searched first, from the end: recent commits are the ones usually asked for. */
+    private int find(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        byte[] raw = Utils.fromHex(id);
+        PackIndex index = lookup();
+        for (int k = count - 1; k >= index.size(); k -= 1) {
+            if (Arrays.equals(id(k), raw)) {
+                return k;
+            }
+        }
+        int found = index.find(raw);
+        return found < 0 ? NONE : (int) index.offset(found);
+    }
+
+    /* Return the index of the records, rewritten first if it is missing, does not match the
+     * records, or too many records were appended after it. */
+    private PackIndex lookup() {
+        if (lookup != null) {
+            return lookup;
+        }
+        if (LOOKUP.exists()) {
+            try {
+                PackIndex index = new PackIndex(LOOKUP);
+                int covered = index.size();
+                if (covered <= count && count - covered <= Math.max(MAX_UNINDEXED, covered / 8)
+                        && Arrays.equals(index.checksum(), lastId(covered))) {
+                    lookup = index;
+                    return lookup;
+                }
+            } catch (RuntimeException excp) {
+                /* A torn index is written again. */
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int k = 0; k < count; k += 1) {
+            order[k] = k;
+        }
+        byte[][] ids = new byte[count][];
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(id(a), id(b)));
+        long[] positions = new long[count];
+        for (int k = 0; k < count; k += 1) {
+            ids[k] = id(order[k]);
+            positions[k] = order[k];
+        }
+        /* Readers holding a shared RepoLock may rewrite the index at the same time. */
+        Durable.write(LOOKUP, PackIndex.encode(ids, positions, lastId(count)));
+        lookup = new PackIndex(LOOKUP);
+        return lookup;
+    }
+
+    /* Return the id of the last of the first covered records, zeros if there are none. */
+    private byte[] lastId(int covered) {
+        return covered == 0 ? new byte[PackIndex.ID_LENGTH] : id(covered - 1);
+    }
+
+    private byte[] id(int position) {
+        byte[] id = new byte[PackIndex.ID_LENGTH];
+        buffer.get(HEADER_LENGTH + position * RECORD_LENGTH, id);
+        return id;
+    }
+
+    private int parent(int position, int which) {
+        return buffer.getInt(HEADER_LENGTH + position * RECORD_LENGTH + PackIndex.ID_LENGTH + 4 * which);
+    }
+
+    private int generation(int position) {
+        if (position == NONE) {
+            return 0;
+        }
+        return buffer.getInt(HEADER_LENGTH + position * RECORD_LENGTH + PackIndex.ID_LENGTH + 8);
+    }
+
+    /* Return the graph, rebuilt first if it is missing, was written by an older version of
+     * gitlet or was left torn by a crash. */
+    private static CommitGraph open() {
+        MappedByteBuffer buffer = GRAPH.exists() ? map() : null;
+        if (buffer == null || !valid(buffer)) {
+            rebuild();
+            buffer = map();
+            if (!valid(buffer)) {
+                throw Utils.error("Unrecognized commit graph.");
+            }
+        }
+        return new CommitGraph(buffer);
+    }
+
+    private static MappedByteBuffer map() {
+        try (FileChannel in = FileChannel.open(GRAPH.toPath(), StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Return whether buffer holds a graph of this version whose records match its count. */
+    private static boolean valid(MappedByteBuffer buffer) {
+        if (buffer.limit() < HEADER_LENGTH || buffer.get(0) != 'G' || buffer.get(1) != 'G'
+                || buffer.get(2) != VERSION) {
+            return false;
+        }
+        long records = buffer.limit() - HEADER_LENGTH;
+        return records % RECORD_LENGTH == 0 && records / RECORD_LENGTH == buffer.getInt(4);
+    }
+
+    /* Write the graph of all commits of the repository, parents before children. */
+    static void rebuild() {
+        List<String> ids = Commit.allCommitIds();
+        Map<String, Integer> positions = new HashMap<>();
+        Map<String, Commit> commits = new HashMap<>();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_LENGTH + ids.size() * RECORD_LENGTH);
+        out.put((byte) 'G').put((byte) 'G').put((byte) VERSION).put((byte) 0).putInt(ids.size());
+        int[] generations = new int[ids.size()];
+        for (String root : ids) {
+            /* Iterative depth-first search, a commit is written once both parents are. */
+            Deque<String> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (positions.containsKey(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.computeIfAbsent(id, Commit::getCommitByID);
+                String parent = commit.getParent();
+                String secondParent = commit.getSecondParent();
+                if (parent != null && !positions.containsKey(parent)) {
+                    stack.push(parent);
+                    continue;
+                }
+                if (secondParent != null && !positions.containsKey(secondParent)) {
+                    stack.push(secondParent);
+                    continue;
+                }
+                stack.pop();
+                int first = parent == null ? NONE : positions.get(parent);
+                int second = secondParent == null ? NONE : positions.get(secondParent);
+                int position = positions.size();
+                generations[position] = 1 + Math.max(first == NONE ? 0 : generations[first],
+                        second == NONE ? 0 : generations[second]);
+                out.put(record(Utils.fromHex(id), first, second, generations[position]));
+                positions.put(id, position);
+                commits.remove(id);
+            }
+        }
+        /* Readers holding a shared RepoLock may rewrite the graph at the same time. */
+        Durable.write(GRAPH, out.array());
+        /* Positions may have changed. */
+        LOOKUP.delete();
+    }
+
+    private static ByteBuffer record(byte[] id, int first, int second, int generation) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        record.put(id).putInt(first).putInt(second).putInt(generation);
+        record.flip();
+        return record;
+    }
+}
@@ -0,0 +1,441 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Represents the commit metadata log, which lists the ID, timestamp, parents and message of
+ *  every commit, so that global-log and find read one file instead of decoding every commit.
+ *  Branch.storeHead appends a record for each new commit. The log only caches what the commits
+ *  hold: it is rebuilt from the commits of the repository when it does not exist, was written by
+ *  an older version, or was torn by a crash during an append.
+ *
+ *  The log is magic "GM", a version byte, a padding byte and the 8-byte length of the log,
+ *  followed by the records. A record is the 20-byte id, the 8-byte timestamp in milliseconds,
+ *  the number of parents and their ids, the length-prefixed message and the CRC-32 of all these.
+ *  A record is appended before the length is updated, so a torn append leaves a length which
+ *  does not match the file. The checksum of every record read is checked too.
+ *
+ *  The words of the messages are indexed in commit-meta.words: a directory of the words in
+ *  order, each with the offsets of the records whose message contains it. The word index covers
+ *  the log up to a given offset; records appended after it are scanned, and the index is rebuilt
+ *  once they make up a large part of the log.
+ *
+ *  @author Xingrong Chen
+ */
+class CommitMeta {
+    public static final File META = join(GITLET_DIR, "commit-meta");
+    public static final File WORDS = join(GITLET_DIR, "commit-meta.words");
+
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 12;
+    private static final int WORDS_HEADER_LENGTH = 16;
+    private static final int CHECKSUM_LENGTH = 4;
+    private static final int DIRECTORY_ENTRY_LENGTH = 24;
+    /* Records after the word index are scanned until they make up more than this many bytes
+     * and an eighth of the log. */
+    private static final int MAX_UNINDEXED = 64 << 10;
+
+    /** The metadata of one commit. */
+    static class Record {
+        final String id;
+        final long time;
+        final String parent;
+        final String secondParent;
+        final String message;
+
+        Record(String id, long time, String parent, String secondParent, String message) {
+            this.id = id;
+            this.time = time;
+            this.parent = parent;
+            this.secondParent = secondParent;
+            this.message = message;
+        }
+    }
+
+    /** Thrown when a record of the log is torn. */
+    private static class TornLogException extends RuntimeException {
+        private static final long serialVersionUID = 5732807707719181313L;
+    }
+
+    /* Append the metadata of the commit which was just stored with given id. */
+    static void add(String id, Commit commit) {
+        if (!META.exists() || !intact(map(META))) {
+            /* The rebuilt log holds the commit. */
+            rebuild();
+            return;
+        }
+        long end = META.length();
+        byte[] record = encode(id, commit);
+        try (FileChannel out = FileChannel.open(META.toPath(), StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(record), end);
+            out.write(ByteBuffer.allocate(8).putLong(0, end + record.length), 4);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.written(META);
+    }
+
+    /* Return the metadata of all commits, in the order they were stored. */
+    static List<Record> all() {
+        return read(log -> {
+            List<Record> records = new ArrayList<>();
+            for (int pos = HEADER_LENGTH; pos < log.limit(); pos = next(log, pos)) {
+                records.add(read(log, pos));
+            }
+            return records;
+        });
+    }
+
+    /* Return what reader returns for the log, after rebuilding the log if reader finds a torn
+     * record in it. */
+    private static <T> T read(Function<MappedByteBuffer, T> reader) {
+        try {
+            return reader.apply(open());
+        } catch (TornLogException | IndexOutOfBoundsException excp) {
+            rebuild();
+            return reader.apply(open());
+        }
+    }
+
+    /* Return the IDs of the commits whose message is message, in lexicographic order. */
+    static List<String> findExact(String message) {
+        return find(words(message), record -> record.message.equals(message));
+    }
+
+    /* Return the IDs of the commits whose message contains every word of words, ignoring case,
+     * in lexicographic order. */
+    static List<String> findWords(String words) {
+        Set<String> wanted = words(words);
+        return find(wanted, record -> words(record.message).containsAll(wanted));
+    }
+
+    /* Return the IDs of the commits whose message contains text, in lexicographic order. */
+    static List<String> findSubstring(String text) {
+        /* A word of text which is not at either end of it is a whole word of a matching message. */
+        Set<String> inner = new TreeSet<>();
+        String[] parts = text.toLowerCase().split("[^\\p{L}\\p{N}]+", -1);
+        for (int i = 1; i < parts.length - 1; i += 1) {
+            if (!parts[i].isEmpty()) {
+                inner.add(parts[i]);
+            }
+        }
+        return find(inner, record -> record.message.contains(text));
+    }
+
+    private interface Matcher {
+        boolean matches(Record record);
+    }
+
+    /* Return the IDs of the commits matched by matcher, looking only at the records containing
+     * every word of required, in lexicographic order. */
+    private static List<String> find(Set<String> required, Matcher matcher) {
+        return read(log -> find(log, required, matcher));
+    }
+
+    private static List<String> find(MappedByteBuffer log, Set<String> required, Matcher matcher) {
+        Set<String> result = new TreeSet<>();
+        long indexed = HEADER_LENGTH;
+        if (!required.isEmpty()) {
+            MappedByteBuffer words = openWords(log);
+            indexed = words.getLong(4);
+            long[] candidates = null;
+            for (String word : required) {
+                long[] postings = postings(words, word);
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+            }
+            for (long pos : candidates) {
+                Record record = read(log, (int) pos);
+                if (matcher.matches(record)) {
+                    result.add(record.id);
+                }
+            }
+        }
+        for (int pos = (int) indexed; pos < log.limit(); pos = next(log, pos)) {
+            Record record = read(log, pos);
+            if (matcher.matches(record)) {
+                result.add(record.id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /* Return the distinct words of text in lower case, a word being a run of letters and digits. */
+    static Set<String> words(String text) {
+        Set<String> words = new TreeSet<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /* Return the offsets of the records containing word, in ascending order. */
+    private static long[] postings(MappedByteBuffer words, String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = words.getInt(12) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = WORDS_HEADER_LENGTH + mid * DIRECTORY_ENTRY_LENGTH;
+            byte[] candidate = new byte[words.getInt(entry + 8)];
+            words.get((int) words.getLong(entry), candidate);
+            int cmp = Arrays.compareUnsigned(candidate, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                long[] postings = new long[words.getInt(entry + 20)];
+                int start = (int) words.getLong(entry + 12);
+                for (int k = 0; k < postings.length; k += 1) {
+                    postings[k] = words.getLong(start + k * 8);
+                }
+                return postings;
+            }
+        }
+        return new long[0];
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n++] = a[i];
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /* Return the word index, rebuilt first if it is missing, unreadable, or too many records are
+     * not in it. */
+    private static MappedByteBuffer openWords(MappedByteBuffer log) {
+        if (WORDS.exists()) {
+            MappedByteBuffer words = map(WORDS);
+            long indexed = words.limit() >= WORDS_HEADER_LENGTH && hasHeader(words, "GW")
+                    ? words.getLong(4) : Long.MAX_VALUE;
+            if (indexed <= log.limit() && log.limit() - indexed <= Math.max(MAX_UNINDEXED, indexed / 8)) {
+                return words;
+            }
+        }
+        writeWords(log);
+        return map(WORDS, "GW");
+    }
+
+    /* Write the word index of all records of log. */
+    private static void writeWords(MappedByteBuffer log) {
+        Map<String, LongList> index = new HashMap<>();
+        for (int pos = HEADER_LENGTH; pos < log.limit(); pos = next(log, pos)) {
+            for (String word : words(read(log, pos).message)) {
+                index.computeIfAbsent(word, k -> new LongList()).add(pos);
+            }
+        }
+        Map<byte[], LongList> sorted = new TreeMap<>(Arrays::compareUnsigned);
+        int wordBytes = 0;
+        int postings = 0;
+        for (Map.Entry<String, LongList> entry : index.entrySet()) {
+            byte[] word = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            sorted.put(word, entry.getValue());
+            wordBytes += word.length;
+            postings += entry.getValue().size;
+        }
+        int directoryEnd = WORDS_HEADER_LENGTH + sorted.size() * DIRECTORY_ENTRY_LENGTH;
+        ByteBuffer out = ByteBuffer.allocate(directoryEnd + wordBytes + postings * 8);
+        out.put((byte) 'G').put((byte) 'W').put((byte) VERSION).put((byte) 0);
+        out.putLong(log.limit()).putInt(sorted.size());
+        long wordPos = directoryEnd;
+        long postingPos = directoryEnd + wordBytes;
+        for (Map.Entry<byte[], LongList> entry : sorted.entrySet()) {
+            out.putLong(wordPos).putInt(entry.getKey().length);
+            out.putLong(postingPos).putInt(entry.getValue().size);
+            wordPos += entry.getKey().length;
+            postingPos += entry.getValue().size * 8L;
+        }
+        for (byte[] word : sorted.keySet()) {
+            out.put(word);
+        }
+        for (LongList list : sorted.values()) {
+            for (int k = 0; k < list.size; k += 1) {
+                out.putLong(list.values[k]);
+            }
+        }
+        Durable.write(WORDS, out.array());
+    }
+
+    /* Write the log of all commits of the repository, oldest first. */
+    static void rebuild() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('G');
+        out.write('M');
+        out.write(VERSION);
+        out.write(0);
+        /* The length, set below. */
+        out.writeBytes(new byte[8]);
+        List<String> ids = Commit.allCommitIds();
+        List<Commit> commits = new ArrayList<>();
+        for (String id : ids) {
+            commits.add(Commit.getCommitByID(id));
+        }
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> commits.get(a).getCommitDate().compareTo(commits.get(b).getCommitDate()));
+        for (int i : order) {
+            byte[] record = encode(ids.get(i), commits.get(i));
+            out.write(record, 0, record.length);
+        }
+        byte[] log = out.toByteArray();
+        ByteBuffer.wrap(log).putLong(4, log.length);
+        Durable.write(META, log);
+        WORDS.delete();
+    }
+
+    private static byte[] encode(String id, Commit commit) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(Utils.fromHex(id));
+        ByteBuffer time = ByteBuffer.allocate(8).putLong(commit.getCommitDate().getTime());
+        out.writeBytes(time.array());
+        int parents = commit.getParent() == null ? 0 : commit.getSecondParent() == null ? 1 : 2;
+        out.write(parents);
+        if (parents > 0) {
+            out.writeBytes(Utils.fromHex(commit.getParent()));
+        }
+        if (parents > 1) {
+            out.writeBytes(Utils.fromHex(commit.getSecondParent()));
+        }
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        Delta.writeVarint(out, message.length);
+        out.writeBytes(message);
+        CRC32 crc = new CRC32();
+        crc.update(out.toByteArray());
+        out.writeBytes(ByteBuffer.allocate(CHECKSUM_LENGTH).putInt((int) crc.getValue()).array());
+        return out.toByteArray();
+    }
+
+    /* Return the record at pos, checking its checksum. */
+    private static Record read(MappedByteBuffer log, int pos) {
+        int end = next(log, pos);
+        if (end > log.limit()) {
+            throw new TornLogException();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(log.slice(pos, end - CHECKSUM_LENGTH - pos));
+        if ((int) crc.getValue() != log.getInt(end - CHECKSUM_LENGTH)) {
+            throw new TornLogException();
+        }
+        byte[] id = new byte[PackIndex.ID_LENGTH];
+        log.get(pos, id);
+        long time = log.getLong(pos + id.length);
+        int parents = log.get(pos + id.length + 8);
+        int at = pos + id.length + 9;
+        String[] parentIds = new String[2];
+        for (int k = 0; k < parents; k += 1) {
+            byte[] parent = new byte[PackIndex.ID_LENGTH];
+            log.get(at, parent);
+            parentIds[k] = Utils.toHex(parent);
+            at += parent.length;
+        }
+        int[] lengthEnd = new int[1];
+        int length = readVarint(log, at, lengthEnd);
+        byte[] message = new byte[length];
+        log.get(lengthEnd[0], message);
+        return new Record(Utils.toHex(id), time, parentIds[0], parentIds[1],
+                new String(message, StandardCharsets.UTF_8));
+    }
+
+    /* Return the offset of the record after the one at pos. */
+    private static int next(MappedByteBuffer log, int pos) {
+        int at = pos + PackIndex.ID_LENGTH + 9 + log.get(pos + PackIndex.ID_LENGTH + 8) * PackIndex.ID_LENGTH;
+        int[] lengthEnd = new int[1];
+        int length = readVarint(log, at, lengthEnd);
+        return lengthEnd[0] + length + CHECKSUM_LENGTH;
+    }
+
+    private static int readVarint(MappedByteBuffer log, int pos, int[] end) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = log.get(pos++) & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        end[0] = pos;
+        return value;
+    }
+
+    /* Return the log, rebuilt first if it is missing, was written by an older version of gitlet,
+     * or its length does not match its header. */
+    private static MappedByteBuffer open() {
+        if (!META.exists() || !intact(map(META))) {
+            rebuild();
+        }
+        return map(META, "GM");
+    }
+
+    /* Return whether log is a log of this version which ends where its header says. */
+    private static boolean intact(MappedByteBuffer log) {
+        return hasHeader(log, "GM") && log.limit() >= HEADER_LENGTH && log.getLong(4) == log.limit();
+    }
+
+    private static MappedByteBuffer map(File file, String magic) {
+        MappedByteBuffer buffer = map(file);
+        if (!hasHeader(buffer, magic)) {
+            throw Utils.error("Unrecognized %s file.", file.getName());
+        }
+        return buffer;
+    }
+
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static boolean hasHeader(MappedByteBuffer buffer, String magic) {
+        return buffer.limit() >= 4 && buffer.get(0) == magic.charAt(0)
+                && buffer.get(1) == magic.charAt(1) && buffer.get(2) == VERSION;
+    }
+
+    /** A growable list of longs. */
+    private static class LongList {
+        private long[] values = new long[2];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
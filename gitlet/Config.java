@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Represents the settings of a repository, which are stored in .gitlet/config
+ *  as "key=value" lines. The file is optional, every setting has a default value.
+ *
+ *  @author Xingrong Chen
+ */
+public class Config {
+    public static final File CONFIG = join(GITLET_DIR, "config");
+
+    /* Settings read from CONFIG, loaded on first use. */
+    private static Properties settings;
+
+    /* Return the value of the given setting, or defaultValue if it is not set. */
+    public static String get(String key, String defaultValue) {
+        String value = load().getProperty(key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Invalid value for %s: %s", key, value);
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Invalid value for %s: %s", key, value);
+        }
+    }
+
+    /* Forget the loaded settings, so that the next lookup reads CONFIG again. */
+    static void reload() {
+        settings = null;
+    }
+
+    private static Properties load() {
+        if (settings == null) {
+            settings = new Properties();
+            if (CONFIG.isFile()) {
+                try (Reader in = Files.newBufferedReader(CONFIG.toPath(), StandardCharsets.UTF_8)) {
+                    settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+}
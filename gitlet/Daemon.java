@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Represents the gitlet daemon, which executes the commands of a repository in one long-running
+ *  JVM. Its classes stay loaded and compiled and its caches (decoded commits, mapped pack indexes)
+ *  stay warm between commands. While the daemon runs, gitlet.Main forwards its arguments over the
+ *  Unix domain socket .gitlet/daemon.sock and prints what the daemon sends back, so a command
+ *  behaves exactly as if it had been executed by Main itself.
+ *
+ *  A request is the working directory of the client, whether GITLET_CACHE_STATS is set for it,
+ *  the number of arguments and the arguments, written with DataOutputStream. The reply is a
+ *  sequence of frames, each a stream byte (STDOUT or STDERR), a length and that many bytes of
+ *  output. It ends with an EXIT byte and the exit status. Commands are executed one at a time,
+ *  in the order they arrive.
+ *
+ *  When GITLET_CACHE_STATS is set, the daemon prints the statistics of its own commit cache
+ *  after the command, since the client's cache was not used.
+ *
+ *  @author Xingrong Chen
+ */
+class Daemon {
+    public static final File SOCKET = join(GITLET_DIR, "daemon.sock");
+
+    /* Frame types of a reply. */
+    private static final int EXIT = 0;
+    private static final int STDOUT = 1;
+    private static final int STDERR = 2;
+
+    private static boolean stopping;
+
+    /* Execute the commands sent to SOCKET until a "daemon stop" command arrives. */
+    static void serve() {
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            /* A live daemon would have received this command, so the socket was left by a killed one. */
+            Files.deleteIfExists(SOCKET.toPath());
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(SOCKET::delete));
+            while (!stopping) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    /* The client went away, the daemon keeps serving others. */
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    private static void handle(SocketChannel client) throws IOException {
+        DataInputStream request = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        String cwd = request.readUTF();
+        boolean cacheStats = request.readBoolean();
+        String[] args = new String[request.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = request.readUTF();
+        }
+        DataOutputStream reply = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FrameOutputStream(reply, STDOUT)));
+        PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(reply, STDERR)));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        int status;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            status = execute(cwd, args);
+        } catch (Throwable excp) {
+            /* Reported the way the JVM reports an exception escaping Main.main. */
+            System.err.print("Exception in thread \"main\" ");
+            excp.printStackTrace();
+            status = 1;
+        } finally {
+            if (cacheStats) {
+                System.err.println(Commit.cacheStats());
+            }
+            out.flush();
+            err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        reply.writeByte(EXIT);
+        reply.writeInt(status);
+        reply.flush();
+    }
+
+    private static int execute(String cwd, String[] args) throws IOException {
+        if (!new File(cwd).getCanonicalFile().equals(CWD.getCanonicalFile())) {
+            System.out.println("The gitlet daemon serves another directory.");
+            return 1;
+        }
+        if (args[0].equals("daemon")) {
+            if (args.length > 1 && args[1].equals("stop")) {
+                stopping = true;
+                System.out.println("Gitlet daemon stopped.");
+                return 0;
+            }
+            System.out.println("A gitlet daemon is already running.");
+            return 1;
+        }
+        /* Another process may have changed the settings or the packs since the last command. */
+        Config.reload();
+        Pack.reload();
+        return Main.execute(args);
+    }
+
+    /* Send args to the running daemon and print its output, and return the exit status of the
+     * command, or null if no daemon is running. With cacheStats, the daemon prints the
+     * statistics of its commit cache after the command. */
+    static Integer forward(String[] args, boolean cacheStats) {
+        if (!SOCKET.exists()) {
+            return null;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            /* Left behind by a daemon which was killed. */
+            return null;
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request.writeUTF(CWD.getPath());
+            request.writeBoolean(cacheStats);
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            DataInputStream reply = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                int type = reply.readByte();
+                if (type == EXIT) {
+                    return reply.readInt();
+                }
+                byte[] data = new byte[reply.readInt()];
+                reply.readFully(data);
+                PrintStream target = type == STDOUT ? System.out : System.err;
+                target.write(data, 0, data.length);
+                target.flush();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the bytes written to it to a reply as frames of one type. */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream reply;
+        private final int type;
+
+        FrameOutputStream(DataOutputStream reply, int type) {
+            this.reply = reply;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            /* Both streams of a reply share it. */
+            synchronized (reply) {
+                reply.writeByte(type);
+                reply.writeInt(len);
+                reply.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            reply.flush();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Computes and applies binary deltas, which describe a target byte array as a sequence
+ *  of instructions that copy ranges of a base byte array or insert literal bytes.
+ *  Matches are found with a rolling hash over fixed-size blocks of the base, the same
+ *  idea as rsync and git's diff-delta.
+ *
+ *  A delta starts with the varint lengths of the base and the target, followed by
+ *  instructions: a byte n with 0 < n < 0x80 inserts the n bytes that follow it,
+ *  the byte 0x80 copies the range of the base given by a varint offset and a varint length.
+ *
+ *  @author Xingrong Chen
+ */
+class Delta {
+
+    /** Number of bytes hashed at a time, shorter matches are not worth a copy instruction. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the polynomial rolling hash. */
+    private static final int PRIME = 31;
+    /** PRIME ** (BLOCK - 1), the weight of the byte that leaves the window. */
+    private static final int OUT_WEIGHT = pow(PRIME, BLOCK - 1);
+    /** Number of candidates verified for each position of the target. */
+    private static final int MAX_CANDIDATES = 16;
+
+    private static final int COPY = 0x80;
+    private static final int MAX_INSERT = 0x7f;
+
+    /** Return a delta which turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 8 + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        /* Index every block of the base by its hash, chained newest first. */
+        int blocks = base.length / BLOCK;
+        int[] heads = new int[tableSize(blocks)];
+        int[] next = new int[blocks];
+        int mask = heads.length - 1;
+        for (int b = 0; b < blocks; b += 1) {
+            int bucket = hash(base, b * BLOCK) & mask;
+            next[b] = heads[bucket];
+            heads[bucket] = b + 1;
+        }
+
+        int insertStart = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestStart = i;
+            int bestLength = 0;
+            int tries = 0;
+            for (int b = heads[h & mask]; b != 0 && tries < MAX_CANDIDATES; b = next[b - 1]) {
+                tries += 1;
+                int offset = (b - 1) * BLOCK;
+                int length = 0;
+                while (offset + length < base.length && i + length < target.length
+                        && base[offset + length] == target[i + length]) {
+                    length += 1;
+                }
+                if (length < BLOCK) {
+                    continue;
+                }
+                /* Grow the match backwards over bytes that would otherwise be inserted. */
+                int start = i;
+                while (offset > 0 && start > insertStart && base[offset - 1] == target[start - 1]) {
+                    offset -= 1;
+                    start -= 1;
+                    length += 1;
+                }
+                if (length > bestLength) {
+                    bestOffset = offset;
+                    bestStart = start;
+                    bestLength = length;
+                }
+            }
+            if (bestLength == 0) {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * OUT_WEIGHT) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+                continue;
+            }
+            writeInsert(out, target, insertStart, bestStart);
+            out.write(COPY);
+            writeVarint(out, bestOffset);
+            writeVarint(out, bestLength);
+            i = bestStart + bestLength;
+            insertStart = i;
+            if (i + BLOCK <= target.length) {
+                h = hash(target, i);
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++] & 0xff;
+            if (op == COPY) {
+                int offset = (int) readVarint(delta, pos);
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(base, offset, result, written, length);
+                written += length;
+            } else {
+                System.arraycopy(delta, pos[0], result, written, op);
+                pos[0] += op;
+                written += op;
+            }
+        }
+        if (written != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Append instructions inserting TARGET[FROM..TO) to OUT. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** Append VALUE to OUT, 7 bits at a time, least significant group first. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Read a varint from DATA at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int hash(byte[] data, int from) {
+        int h = 0;
+        for (int k = from; k < from + BLOCK; k += 1) {
+            h = h * PRIME + data[k];
+        }
+        return h;
+    }
+
+    private static int tableSize(int entries) {
+        int size = 1;
+        while (size < entries * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int k = 0; k < exponent; k += 1) {
+            result *= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,297 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Computes the differences between the lines of two files with the linear space variant of
+ *  Myers' O(ND) algorithm. Lines are compared as ints: the lines of all files compared together
+ *  are numbered so that equal lines get equal numbers, each line is hashed and compared once.
+ *
+ *  @author Xingrong Chen
+ */
+class Diff {
+
+    /** Represents the lines of a file, each line including its line terminator, if any. */
+    static class Lines {
+        private final byte[] data;
+        /* Line i is data[starts[i]] to data[starts[i + 1]]. */
+        private final int[] starts;
+        /* Line i is numbered ids[i]. */
+        private final int[] ids;
+
+        private Lines(byte[] data, int[] starts, int[] ids) {
+            this.data = data;
+            this.starts = starts;
+            this.ids = ids;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /* Return whether the file seems to be binary rather than text, i.e. contains a NUL byte
+         * among its first bytes. */
+        boolean isBinary() {
+            for (int i = 0; i < Math.min(data.length, BINARY_CHECK); i += 1) {
+                if (data[i] == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /* Return whether line i ends with a line terminator, which only the last line may lack. */
+        boolean hasNewline(int i) {
+            return data[starts[i + 1] - 1] == '\n';
+        }
+
+        /* Return whether lines from to to - 1 are equal to lines otherFrom... of other. */
+        boolean equalLines(int from, int to, Lines other, int otherFrom, int otherTo) {
+            return Arrays.equals(ids, from, to, other.ids, otherFrom, otherTo);
+        }
+
+        /* Write lines from to to - 1 to out. */
+        void write(OutputStream out, int from, int to) throws IOException {
+            out.write(data, starts[from], starts[to] - starts[from]);
+        }
+    }
+
+    /** Represents lines aStart to aEnd - 1 of one file being replaced by lines bStart to
+     *  bEnd - 1 of the other. Either range may be empty, but not both. */
+    static class Edit {
+        final int aStart;
+        final int aEnd;
+        final int bStart;
+        final int bEnd;
+
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    /* Files whose first BINARY_CHECK bytes contain a NUL byte are taken to be binary. */
+    private static final int BINARY_CHECK = 8000;
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] aChanged;
+    private final boolean[] bChanged;
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        aChanged = new boolean[a.length];
+        bChanged = new boolean[b.length];
+    }
+
+    /* Split each of contents into lines, numbering equal lines of all of them alike. */
+    static Lines[] split(byte[]... contents) {
+        Map<Line, Integer> numbers = new HashMap<>();
+        Lines[] result = new Lines[contents.length];
+        for (int c = 0; c < contents.length; c += 1) {
+            byte[] data = contents[c];
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n' || i == data.length - 1) {
+                    count += 1;
+                }
+            }
+            int[] starts = new int[count + 1];
+            int[] ids = new int[count];
+            int line = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n' || i == data.length - 1) {
+                    starts[line + 1] = i + 1;
+                    Line key = new Line(data, starts[line], i + 1);
+                    Integer id = numbers.putIfAbsent(key, numbers.size());
+                    ids[line] = id == null ? numbers.size() - 1 : id;
+                    line += 1;
+                }
+            }
+            result[c] = new Lines(data, starts, ids);
+        }
+        return result;
+    }
+
+    /* Return the edits turning the lines of a into those of b, in the order of the lines. */
+    static List<Edit> diff(Lines a, Lines b) {
+        Diff diff = new Diff(a.ids, b.ids);
+        diff.compare(0, a.size(), 0, b.size());
+        return diff.edits();
+    }
+
+    /* Mark the lines differing between a[aLo..aHi) and b[bLo..bHi) as changed. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            Arrays.fill(aChanged, aLo, aHi, true);
+            Arrays.fill(bChanged, bLo, bHi, true);
+            return;
+        }
+        int[] split = middleSnake(aLo, aHi, bLo, bHi);
+        if (split == null) {
+            Arrays.fill(aChanged, aLo, aHi, true);
+            Arrays.fill(bChanged, bLo, bHi, true);
+            return;
+        }
+        compare(aLo, split[0], bLo, split[1]);
+        compare(split[0], aHi, split[1], bHi);
+    }
+
+    /* Return a point {x, y} on a shortest edit script from (aLo, bLo) to (aHi, bHi), found by
+     * searching forward from the start and backward from the end at once until both searches
+     * meet, or null if there is none other than the two ends. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        /* forward[offset + k]: furthest x reached on diagonal k = x - y from the start,
+         * backward[offset + k]: furthest distance from the end reached on diagonal k. */
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        /* If delta is odd, the searches meet while searching forward, else backward. */
+        boolean front = (delta & 1) != 0;
+        int k1Start = 0;
+        int k1End = 0;
+        int k2Start = 0;
+        int k2End = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+                int k1Offset = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])) {
+                    x1 = forward[k1Offset + 1];
+                } else {
+                    x1 = forward[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[k1Offset] = x1;
+                if (x1 > n) {
+                    k1End += 2;
+                } else if (y1 > m) {
+                    k1Start += 2;
+                } else if (front) {
+                    int k2Offset = offset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1
+                            && x1 >= n - backward[k2Offset]) {
+                        return new int[] {aLo + x1, bLo + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+                int k2Offset = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])) {
+                    x2 = backward[k2Offset + 1];
+                } else {
+                    x2 = backward[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[k2Offset] = x2;
+                if (x2 > n) {
+                    k2End += 2;
+                } else if (y2 > m) {
+                    k2Start += 2;
+                } else if (!front) {
+                    int k1Offset = offset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+                        int x1 = forward[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /* Return the runs of changed lines as edits. */
+    private List<Edit> edits() {
+        List<Edit> edits = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !aChanged[i] && !bChanged[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < a.length && aChanged[i]) {
+                i += 1;
+            }
+            while (j < b.length && bChanged[j]) {
+                j += 1;
+            }
+            edits.add(new Edit(aStart, i, bStart, j));
+        }
+        return edits;
+    }
+
+    /** Represents a line of a file as a key of the map numbering lines. */
+    private static class Line {
+        private final byte[] data;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        Line(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i += 1) {
+                h = 31 * h + data[i];
+            }
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) o;
+            return hash == other.hash
+                    && Arrays.equals(data, start, end, other.data, other.start, other.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
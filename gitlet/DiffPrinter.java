@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.join;
+import static gitlet.Utils.readContents;
+
+/** Prints the changes between two commits, or between a commit and the working directory, for
+ *  the diff command, as unified hunks with three lines of context. Files whose blob IDs are equal
+ *  are skipped without being read, and so are directories whose trees are equal.
+ *
+ *  "diff" compares the head commit with the working directory, "diff [commit id]" compares the
+ *  given commit with the working directory and "diff [commit id] [commit id]" compares two
+ *  commits. Only files tracked by the commit or staged for addition are compared with the
+ *  working directory, untracked files are not shown.
+ *
+ *  @author Xingrong Chen
+ */
+class DiffPrinter {
+    /* Number of unchanged lines shown around each change. */
+    private static final int CONTEXT = 3;
+
+    private final PrintStream out = new PrintStream(new BufferedOutputStream(System.out, Utils.IO_BUFFER_SIZE));
+
+    /* Print the changes named by the arguments of a diff command, args[0] being "diff". */
+    static void print(String[] args) {
+        if (args.length > 3) {
+            System.out.println("Incorrect operands.");
+            Utils.exit(0);
+        }
+        Commit from = args.length > 1 ? Commit.getCommitByID(Commit.resolveID(args[1])) : Branch.getHead();
+        DiffPrinter printer = new DiffPrinter();
+        if (args.length > 2) {
+            printer.printCommits(from, Commit.getCommitByID(Commit.resolveID(args[2])));
+        } else {
+            printer.printWorkingFiles(from);
+        }
+        printer.out.flush();
+    }
+
+    /* Print the changes from commit from to commit to. */
+    private void printCommits(Commit from, Commit to) {
+        for (Map.Entry<String, String> change : from.compareDiff(to).entrySet()) {
+            String[] val = change.getValue().split(",");
+            String path = change.getKey();
+            switch (val[1]) {
+                case "added" -> printFile(path, null, val[0], null);
+                case "deleted" -> printFile(path, val[0], null, null);
+                default -> printFile(path, from.blobID(path), val[0], null);
+            }
+        }
+    }
+
+    /* Print the changes from commit from to the working directory. */
+    private void printWorkingFiles(Commit from) {
+        Staged staged = Staged.getStaged();
+        Map<String, String> fromFiles = from.getContentMapping();
+        TreeSet<String> paths = new TreeSet<>(fromFiles.keySet());
+        paths.addAll(staged.getStagedFiles());
+        List<String> files = new ArrayList<>(paths);
+        Staged.Hashed[] hashed = new Staged.Hashed[files.size()];
+        Parallel.forEach(files.size(), i -> hashed[i] = staged.hash(files.get(i)));
+        for (int i = 0; i < hashed.length; i += 1) {
+            String path = files.get(i);
+            String oldID = fromFiles.get(path);
+            String newID = hashed[i].id;
+            if (oldID == null ? newID != null : !oldID.equals(newID)) {
+                printFile(path, oldID, newID, newID == null ? null : readContents(join(CWD, path)));
+            }
+        }
+    }
+
+    /* Print the changes to the file at path from the blob with ID oldID to the blob with ID newID.
+     * An ID is null if the file does not exist on that side, newContent are the contents of the
+     * new version if they are not stored as a blob. */
+    private void printFile(String path, String oldID, String newID, byte[] newContent) {
+        Diff.Lines[] lines = Diff.split(read(oldID), newContent != null ? newContent : read(newID));
+        out.println("diff --git a/" + path + " b/" + path);
+        if (lines[0].isBinary() || lines[1].isBinary()) {
+            out.println("Binary files " + (oldID == null ? "/dev/null" : "a/" + path) + " and "
+                    + (newID == null ? "/dev/null" : "b/" + path) + " differ");
+            return;
+        }
+        out.println("--- " + (oldID == null ? "/dev/null" : "a/" + path));
+        out.println("+++ " + (newID == null ? "/dev/null" : "b/" + path));
+        printHunks(lines[0], lines[1]);
+    }
+
+    /* Print the changes from a to b as hunks, joining changes less than 2 * CONTEXT lines apart. */
+    private void printHunks(Diff.Lines a, Diff.Lines b) {
+        List<Diff.Edit> edits = Diff.diff(a, b);
+        int i = 0;
+        while (i < edits.size()) {
+            int j = i + 1;
+            while (j < edits.size() && edits.get(j).aStart - edits.get(j - 1).aEnd <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Diff.Edit first = edits.get(i);
+            Diff.Edit last = edits.get(j - 1);
+            int aLo = Math.max(0, first.aStart - CONTEXT);
+            int aHi = Math.min(a.size(), last.aEnd + CONTEXT);
+            /* Lines around the changes are the same in a and b. */
+            int bLo = first.bStart - (first.aStart - aLo);
+            int bHi = last.bEnd + (aHi - last.aEnd);
+            out.println("@@ -" + range(aLo, aHi) + " +" + range(bLo, bHi) + " @@");
+            int done = aLo;
+            for (Diff.Edit edit : edits.subList(i, j)) {
+                printLines(' ', a, done, edit.aStart);
+                printLines('-', a, edit.aStart, edit.aEnd);
+                printLines('+', b, edit.bStart, edit.bEnd);
+                done = edit.aEnd;
+            }
+            printLines(' ', a, done, aHi);
+            i = j;
+        }
+    }
+
+    /* Return lines lo to hi - 1 as a range of a hunk header: the first line, counting from 1,
+     * and the number of lines unless it is 1. An empty range is given by the line before it. */
+    private static String range(int lo, int hi) {
+        if (hi - lo == 1) {
+            return String.valueOf(lo + 1);
+        }
+        return (hi == lo ? lo : lo + 1) + "," + (hi - lo);
+    }
+
+    private void printLines(char prefix, Diff.Lines lines, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            out.print(prefix);
+            try {
+                lines.write(out, i, i + 1);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (!lines.hasNewline(i)) {
+                out.println();
+                out.println("\\ No newline at end of file");
+            }
+        }
+    }
+
+    /* Return the contents of the blob with given ID, or no bytes if the ID is null. */
+    @SuppressWarnings("try")
+    private static byte[] read(String id) {
+        if (id == null) {
+            return new byte[0];
+        }
+        try (Trace.Span span = Trace.start(Trace.READ); InputStream in = ObjectStore.open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static gitlet.Utils.join;
+import static gitlet.Utils.readContentsAsString;
+
+/** Makes the writes of a command to the repository atomic and ordered, so that a crash never
+ *  leaves a branch naming a missing or partly written commit, object or tree.
+ *
+ *  Files are written to a temporary file next to them which is then renamed into place, so they
+ *  are never seen half written. Written files are not synced to disk one by one: they are
+ *  remembered, and all of them are synced at once (in parallel, see Parallel) right before a ref
+ *  is changed, and at the end of the command. A ref is changed by writing its new value to
+ *  "<ref>.lock", which fails if another gitlet process is changing the same ref, syncing it
+ *  and renaming it over the ref. A lock file found while holding the exclusive RepoLock was left
+ *  by a process which died, and is removed. Setting core.fsync to false skips the syncs, which keeps the
+ *  writes atomic and ordered for other processes but not across a crash of the machine.
+ *
+ *  The commit graph and the commit metadata log are appended to in place rather than renamed
+ *  into place. They are caches of what the commits hold, synced with the commit before the ref
+ *  naming it changes, and carry counts and checksums (see CommitGraph and CommitMeta), so one
+ *  torn by a crash is detected and rebuilt from the commits when next opened.
+ *
+ *  @author Xingrong Chen
+ */
+class Durable {
+
+    /* Files and directories written since the last sync. */
+    private static final Set<Path> pending = new LinkedHashSet<>();
+
+    /* Replace file with the concatenation of contents (see Utils.writeContents) through a
+     * temporary file, which is synced with the next sync. */
+    @SuppressWarnings("try")
+    static void write(File file, Object... contents) {
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            File temp = join(file.getParentFile(), String.format(".%s.%016x.tmp", file.getName(),
+                    ThreadLocalRandom.current().nextLong()));
+            try {
+                Utils.writeContents(temp, contents);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                temp.delete();
+            }
+            written(file);
+        }
+    }
+
+    /* Remember that file was written or renamed into place, so that it and its directory entry
+     * are synced with the next sync. */
+    static synchronized void written(File file) {
+        pending.add(file.toPath());
+        pending.add(file.getParentFile().toPath());
+    }
+
+    /* Sync the files written since the last sync to disk. */
+    @SuppressWarnings("try")
+    static void sync() {
+        List<Path> paths;
+        synchronized (Durable.class) {
+            paths = new ArrayList<>(pending);
+            pending.clear();
+        }
+        if (paths.isEmpty() || !enabled()) {
+            return;
+        }
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            Parallel.forEach(paths.size(), i -> force(paths.get(i)));
+        }
+    }
+
+    /* Set ref to value once all files written before are synced, so that it never names an
+     * object lost in a crash. If expected is not null, ref is only changed if it still holds
+     * expected, i.e. no other process changed it since it was read. */
+    @SuppressWarnings("try")
+    static void updateRef(File ref, String expected, String value) {
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            sync();
+            File lock = new File(ref.getPath() + ".lock");
+            FileChannel channel;
+            try {
+                if (lock.exists() && RepoLock.heldExclusive()) {
+                    /* Nobody else changes refs now, so the lock was left by a process which died. */
+                    lock.delete();
+                }
+                channel = FileChannel.open(lock.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            } catch (FileAlreadyExistsException excp) {
+                System.out.println("Unable to create " + lock.getPath() + ": another gitlet process is "
+                        + "changing the repository. If no gitlet process is running, remove the file.");
+                Utils.exit(1);
+                return;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            try {
+                try (channel) {
+                    if (expected != null && !(ref.exists() && readContentsAsString(ref).equals(expected))) {
+                        System.out.println(ref.getName() + " was changed by another gitlet process.");
+                        Utils.exit(1);
+                    }
+                    channel.write(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+                    if (enabled()) {
+                        channel.force(true);
+                    }
+                }
+                Files.move(lock.toPath(), ref.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                lock.delete();
+            }
+            if (enabled()) {
+                force(ref.getParentFile().toPath());
+            }
+        }
+    }
+
+    private static boolean enabled() {
+        return !Config.get("core.fsync", "true").equals("false");
+    }
+
+    private static void force(Path path) {
+        boolean directory = Files.isDirectory(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (NoSuchFileException excp) {
+            /* Removed since it was written, e.g. a loose object which was packed. */
+        } catch (IOException excp) {
+            /* Not every platform can sync a directory; its entries are then synced with it. */
+            if (!directory) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
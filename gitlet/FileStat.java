@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Represents the stat data of a file in the working directory: its modification time,
+ *  size and inode. A file whose stat data did not change since its content was hashed
+ *  is assumed to still have that content, like the index of git does.
+ *
+ *  @author Xingrong Chen
+ */
+class FileStat {
+    /* The inode is only available where the file system has a unix attribute view. */
+    private static final boolean UNIX = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    /** Modification time in nanoseconds since the epoch. */
+    final long mtime;
+    final long size;
+    /** Inode number, or 0 if the file system does not report one. */
+    final long inode;
+
+    FileStat(long mtime, long size, long inode) {
+        this.mtime = mtime;
+        this.size = size;
+        this.inode = inode;
+    }
+
+    /* Return the stat data of given file, or null if it does not exist. */
+    static FileStat of(File file) {
+        try {
+            if (UNIX) {
+                Map<String, Object> attributes = Files.readAttributes(file.toPath(),
+                        "unix:lastModifiedTime,size,ino");
+                return new FileStat(nanos((FileTime) attributes.get("lastModifiedTime")),
+                        (Long) attributes.get("size"), (Long) attributes.get("ino"));
+            }
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new FileStat(nanos(attributes.lastModifiedTime()), attributes.size(), 0);
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static long nanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof FileStat)) {
+            return false;
+        }
+        FileStat stat = (FileStat) other;
+        return mtime == stat.mtime && size == stat.size && inode == stat.inode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(mtime) * 31 + Long.hashCode(size);
+    }
+}
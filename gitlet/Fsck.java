@@ -0,0 +1,318 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Repository.BLOBS;
+import static gitlet.Repository.COMMITS;
+import static gitlet.Utils.join;
+import static gitlet.Utils.plainFilenamesIn;
+import static gitlet.Utils.readContents;
+import static gitlet.Utils.readContentsAsString;
+
+/** Verifies the integrity of the repository, for the fsck command.
+ *
+ *  Every stored object, loose or packed, is read back and hashed again in parallel (see
+ *  Parallel); blobs are hashed as they are streamed, never held in memory whole. An object
+ *  whose hash differs from its ID, or which cannot be read or decoded, is corrupt.
+ *
+ *  Then the parents and the trees of every commit, the entries of every tree and the chunks of
+ *  every chunked blob (see Chunker) are looked up; those which are not stored are missing.
+ *  Finally, stored objects which no branch, staged file, commit or tree refers to are reported
+ *  as dangling. These are harmless, and gc deletes them.
+ *
+ *  When run in a terminal, the progress of hashing is shown on standard error. The command
+ *  exits with status 1 if an object is corrupt or missing.
+ *
+ *  @author Xingrong Chen
+ */
+class Fsck {
+
+    /* Where an object is stored. */
+    private static final int LOOSE_COMMIT = 0;
+    private static final int LOOSE = 1;
+    private static final int LEGACY_BLOB = 2;
+    private static final int PACKED_COMMIT = 3;
+    private static final int PACKED = 4;
+
+    /** Represents a stored copy of an object. */
+    private static class Stored {
+        private final String id;
+        private final int kind;
+        private final File file;
+
+        Stored(String id, int kind, File file) {
+            this.id = id;
+            this.kind = kind;
+            this.file = file;
+        }
+    }
+
+    /* Stored commits and other objects, whether they are intact or not. */
+    private final Map<String, Commit> commits = new ConcurrentHashMap<>();
+    private final Set<String> objects = ConcurrentHashMap.newKeySet();
+    /* Objects which cannot be trusted. */
+    private final Set<String> bad = ConcurrentHashMap.newKeySet();
+    private final Set<String> referenced = ConcurrentHashMap.newKeySet();
+    /* The chunks of each loose blob stored in chunks. */
+    private final Map<String, List<String>> chunks = new ConcurrentHashMap<>();
+    private final Set<String> visitedTrees = ConcurrentHashMap.newKeySet();
+    private final Set<String> corrupt = Collections.synchronizedSet(new TreeSet<>());
+    private final Set<String> missing = Collections.synchronizedSet(new TreeSet<>());
+    private final Map<String, Integer> packedTypes = new HashMap<>();
+    private final AtomicInteger checked = new AtomicInteger();
+    private final boolean showProgress = System.console() != null;
+    private int shownPercent = -1;
+
+    /* Check the repository and print the problems found. */
+    static void fsck() {
+        Fsck fsck = new Fsck();
+        List<Stored> stored = fsck.list();
+        Parallel.forEach(stored.size(), i -> fsck.verify(stored.get(i), stored.size()));
+        if (fsck.showProgress) {
+            System.err.println(", done.");
+        }
+        List<Commit> commitList = new ArrayList<>(fsck.commits.values());
+        Parallel.forEach(commitList.size(), i -> fsck.connect(commitList.get(i)));
+        Set<String> dangling = fsck.dangling();
+        for (String line : fsck.corrupt) {
+            System.out.println(line);
+        }
+        for (String line : fsck.missing) {
+            System.out.println(line);
+        }
+        for (String line : dangling) {
+            System.out.println(line);
+        }
+        System.out.printf("Checked %d objects: %d corrupt, %d missing, %d dangling.%n", stored.size(),
+                fsck.corrupt.size(), fsck.missing.size(), dangling.size());
+        if (!fsck.corrupt.isEmpty() || !fsck.missing.isEmpty()) {
+            Utils.exit(1);
+        }
+    }
+
+    /* Return every stored copy of every object. */
+    private List<Stored> list() {
+        List<Stored> stored = new ArrayList<>();
+        for (String name : Commit.looseCommitIds()) {
+            stored.add(new Stored(name, LOOSE_COMMIT, join(COMMITS, name)));
+        }
+        File[] dirs = ObjectStore.OBJECTS.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                List<String> names = plainFilenamesIn(dir);
+                for (String name : names == null ? List.<String>of() : names) {
+                    /* Skip the temporary files of interrupted writes. */
+                    if (ObjectId.isHex(dir.getName() + name)) {
+                        stored.add(new Stored(dir.getName() + name, LOOSE, join(dir, name)));
+                    }
+                }
+            }
+        }
+        List<String> legacy = plainFilenamesIn(BLOBS);
+        if (legacy != null) {
+            for (String name : legacy) {
+                /* Skip the temporary "<id>--" blobs of staged files. */
+                if (ObjectId.isHex(name)) {
+                    stored.add(new Stored(name, LEGACY_BLOB, join(BLOBS, name)));
+                }
+            }
+        }
+        Pack.types(packedTypes);
+        for (Map.Entry<String, Integer> entry : packedTypes.entrySet()) {
+            int kind = entry.getValue() == Pack.COMMIT ? PACKED_COMMIT : PACKED;
+            stored.add(new Stored(entry.getKey(), kind, null));
+        }
+        return stored;
+    }
+
+    /* Hash the stored copy of an object again, and decode it if it is a commit. */
+    private void verify(Stored object, int total) {
+        boolean isCommit = object.kind == LOOSE_COMMIT || object.kind == PACKED_COMMIT;
+        try {
+            String hash;
+            if (isCommit) {
+                byte[] data = object.kind == LOOSE_COMMIT ? readContents(object.file) : Pack.read(object.id);
+                hash = Utils.sha1(data);
+                commits.put(object.id, Commit.decode(data));
+            } else {
+                objects.add(object.id);
+                if (object.kind == LOOSE && !chunksStored(object)) {
+                    /* Reported as missing, rather than this object as corrupt. */
+                    progress(total);
+                    return;
+                }
+                try (InputStream in = open(object)) {
+                    hash = Utils.sha1(in);
+                }
+            }
+            if (!hash.equals(object.id)) {
+                reportCorrupt(object, isCommit);
+            }
+        } catch (IOException | RuntimeException excp) {
+            reportCorrupt(object, isCommit);
+        }
+        progress(total);
+    }
+
+    /* Record the chunks of a loose object stored in chunks, and return whether they are all
+     * stored, so that its contents can be read. */
+    private boolean chunksStored(Stored object) throws IOException {
+        List<String> ids = ObjectStore.chunks(object.file);
+        if (ids.isEmpty()) {
+            return true;
+        }
+        chunks.put(object.id, ids);
+        for (String id : ids) {
+            if (!ObjectStore.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static InputStream open(Stored object) throws IOException {
+        return switch (object.kind) {
+            case LOOSE -> ObjectStore.openLoose(object.file);
+            case LEGACY_BLOB -> Files.newInputStream(object.file.toPath());
+            default -> Pack.open(object.id);
+        };
+    }
+
+    private void reportCorrupt(Stored object, boolean isCommit) {
+        if (isCommit) {
+            commits.remove(object.id);
+        }
+        bad.add(object.id);
+        String where = object.file == null ? "in a pack"
+                : "in " + Repository.CWD.toPath().relativize(object.file.toPath());
+        corrupt.add("corrupt " + (isCommit ? "commit " : "object ") + object.id + " " + where);
+    }
+
+    /* Check that the parents and the tree of commit are stored. */
+    private void connect(Commit commit) {
+        for (String parent : new String[] {commit.getParent(), commit.getSecondParent()}) {
+            if (parent != null) {
+                referenced.add(parent);
+                if (!commits.containsKey(parent) && !bad.contains(parent)) {
+                    missing.add("missing commit " + parent);
+                }
+            }
+        }
+        if (commit.getStoredTree() == null) {
+            for (String blob : commit.getContentMapping().values()) {
+                referenceBlob(blob);
+            }
+            return;
+        }
+        Deque<String> trees = new ArrayDeque<>();
+        trees.push(commit.getStoredTree());
+        while (!trees.isEmpty()) {
+            String id = trees.pop();
+            referenced.add(id);
+            if (!visitedTrees.add(id) || bad.contains(id)) {
+                continue;
+            }
+            if (!objects.contains(id)) {
+                missing.add("missing tree " + id);
+                continue;
+            }
+            List<String> blobs = new ArrayList<>();
+            try {
+                Tree.children(id, blobs, trees);
+            } catch (RuntimeException excp) {
+                corrupt.add("corrupt tree " + id);
+                continue;
+            }
+            for (String blob : blobs) {
+                referenceBlob(blob);
+            }
+        }
+    }
+
+    private void referenceBlob(String id) {
+        referenced.add(id);
+        if (!objects.contains(id)) {
+            missing.add("missing blob " + id);
+        }
+        for (String chunk : chunks.getOrDefault(id, List.of())) {
+            referenced.add(chunk);
+            if (!objects.contains(chunk)) {
+                missing.add("missing chunk " + chunk + " of blob " + id);
+            }
+        }
+    }
+
+    /* Return the lines reporting the objects nothing refers to, and report the branches naming
+     * a commit which is not stored as missing. */
+    private Set<String> dangling() {
+        Set<String> roots = new HashSet<>();
+        for (String blob : Staged.getStaged().getStagedBlobs()) {
+            roots.add(blob);
+            roots.addAll(chunks.getOrDefault(blob, List.of()));
+        }
+        for (String branch : plainFilenamesIn(Branch.BRANCH)) {
+            if (!branch.endsWith(".lock")) {
+                String id = readContentsAsString(join(Branch.BRANCH, branch));
+                roots.add(id);
+                if (!commits.containsKey(id) && !bad.contains(id)) {
+                    missing.add("missing commit " + id + " (head of branch " + branch + ")");
+                }
+            }
+        }
+        Set<String> result = new TreeSet<>();
+        for (String id : commits.keySet()) {
+            if (!referenced.contains(id) && !roots.contains(id)) {
+                result.add("dangling commit " + id);
+            }
+        }
+        for (String id : objects) {
+            if (!referenced.contains(id) && !roots.contains(id) && !bad.contains(id)) {
+                result.add("dangling " + (isTree(id) ? "tree " : "blob ") + id);
+            }
+        }
+        return result;
+    }
+
+    private boolean isTree(String id) {
+        Integer type = packedTypes.get(id);
+        if (type != null) {
+            return type == Pack.TREE;
+        }
+        try {
+            Tree.read(id);
+            return true;
+        } catch (RuntimeException excp) {
+            return false;
+        }
+    }
+
+    /* Count one more object as checked, and show the percentage checked when it changes. */
+    private void progress(int total) {
+        int done = checked.incrementAndGet();
+        if (!showProgress) {
+            return;
+        }
+        int percent = (int) (done * 100L / total);
+        synchronized (this) {
+            if (percent > shownPercent) {
+                shownPercent = percent;
+                System.err.printf("\rChecking objects: %3d%% (%d/%d)", percent, done, total);
+            }
+        }
+    }
+}
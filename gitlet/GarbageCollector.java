@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Repository.BLOBS;
+import static gitlet.Repository.COMMITS;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+import static gitlet.Utils.plainFilenamesIn;
+import static gitlet.Utils.readContentsAsString;
+
+/** Deletes the loose objects no branch can reach any more, for the gc command: commits left
+ *  behind by reset and rm-branch, the trees and blobs only they refer to, blobs which were
+ *  staged and then unstaged, and temporary files left by gitlet processes which were killed.
+ *
+ *  The mark phase starts from the commits at the head of every branch, from the packed
+ *  commits and from the blobs staged for addition. Commits are followed through both parents; the trees of all reachable
+ *  commits are then walked in parallel (see Parallel), each tree only once, and the chunks of
+ *  the reachable blobs stored in chunks (see Chunker) are marked with them. The sweep phase
+ *  deletes every loose object and temporary file which was not marked and was last modified
+ *  more than gc.pruneExpire seconds ago, or at any time with "gc --now". Objects in packs are
+ *  kept.
+ *
+ *  @author Xingrong Chen
+ */
+class GarbageCollector {
+    /* Default grace period, in seconds, of unreachable objects: two weeks, as in git. */
+    private static final int PRUNE_EXPIRE = 14 * 24 * 60 * 60;
+
+    private final Set<ObjectId> reachable = ConcurrentHashMap.newKeySet();
+    /* Blobs staged by older versions of gitlet as temporary "<id>--" files. */
+    private final Set<String> staged = new HashSet<>();
+    private final AtomicInteger objects = new AtomicInteger();
+    private final AtomicInteger temporary = new AtomicInteger();
+    private volatile boolean commitsRemoved;
+
+    /* Delete unreachable objects and temporary files, and print how many were deleted. With
+     * now, objects are deleted however recently they were written. */
+    static void gc(boolean now) {
+        long expire = now ? 0 : Config.getInt("gc.pruneExpire", PRUNE_EXPIRE) * 1000L;
+        GarbageCollector collector = new GarbageCollector();
+        collector.mark();
+        collector.sweep(System.currentTimeMillis() - expire);
+        if (collector.commitsRemoved) {
+            /* Both list every commit of the repository. */
+            CommitGraph.rebuild();
+            CommitMeta.rebuild();
+        }
+        System.out.printf("Removed %d unreachable objects and %d temporary files.%n",
+                collector.objects.get(), collector.temporary.get());
+    }
+
+    private void mark() {
+        Deque<String> pending = new ArrayDeque<>();
+        for (String branch : plainFilenamesIn(Branch.BRANCH)) {
+            if (!branch.endsWith(".lock")) {
+                pending.push(readContentsAsString(join(Branch.BRANCH, branch)));
+            }
+        }
+        /* Packed objects are kept, and so are the chunked blobs of packed commits. */
+        Map<String, Integer> packed = new HashMap<>();
+        Pack.types(packed);
+        for (Map.Entry<String, Integer> entry : packed.entrySet()) {
+            if (entry.getValue() == Pack.COMMIT) {
+                pending.push(entry.getKey());
+            }
+        }
+        List<Commit> commits = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (id.isEmpty() || !reachable.add(ObjectId.fromHex(id))) {
+                continue;
+            }
+            Commit commit = Commit.getCommitByID(id);
+            commits.add(commit);
+            if (commit.getParent() != null) {
+                pending.push(commit.getParent());
+            }
+            if (commit.getSecondParent() != null) {
+                pending.push(commit.getSecondParent());
+            }
+        }
+        for (String blob : Staged.getStaged().getStagedBlobs()) {
+            reachable.add(ObjectId.fromHex(blob));
+            staged.add(blob + "--");
+        }
+        Parallel.forEach(commits.size(), i -> {
+            Commit commit = commits.get(i);
+            if (commit.getStoredTree() == null) {
+                for (String blob : commit.getContentMapping().values()) {
+                    reachable.add(ObjectId.fromHex(blob));
+                }
+            } else {
+                markTree(commit.getStoredTree());
+            }
+        });
+    }
+
+    /* Mark the tree with given ID and everything under it, unless it was marked already. */
+    private void markTree(String treeID) {
+        Deque<String> trees = new ArrayDeque<>();
+        trees.push(treeID);
+        while (!trees.isEmpty()) {
+            String id = trees.pop();
+            /* Another thread may be walking this tree, it marks what is under it. */
+            if (reachable.add(ObjectId.fromHex(id))) {
+                List<String> blobs = new ArrayList<>();
+                Tree.children(id, blobs, trees);
+                for (String blob : blobs) {
+                    reachable.add(ObjectId.fromHex(blob));
+                }
+            }
+        }
+    }
+
+    /* Delete the unmarked loose objects and the temporary files last modified before cutoff. */
+    private void sweep(long cutoff) {
+        List<File> candidates = new ArrayList<>();
+        List<File> fanOut = new ArrayList<>();
+        File[] dirs = ObjectStore.OBJECTS.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                fanOut.add(dir);
+                addFiles(dir, candidates);
+            }
+        }
+        for (File dir : new File[] {COMMITS, BLOBS, Pack.PACK_DIR, Branch.BRANCH, GITLET_DIR}) {
+            addFiles(dir, candidates);
+        }
+        /* The chunks of every reachable blob are marked before anything is deleted. */
+        Parallel.forEach(candidates.size(), i -> markChunks(candidates.get(i)));
+        Parallel.forEach(candidates.size(), i -> sweep(candidates.get(i), cutoff));
+        for (File dir : fanOut) {
+            /* Only succeeds once the fan-out directory is empty. */
+            dir.delete();
+        }
+    }
+
+    /* Mark the chunks of file, if it is a reachable loose object stored in chunks. */
+    private void markChunks(File file) {
+        File dir = file.getParentFile();
+        if (!dir.getParentFile().equals(ObjectStore.OBJECTS) || !isObject(dir, file.getName())
+                || !isReachable(dir.getName() + file.getName())) {
+            return;
+        }
+        try {
+            for (String chunk : ObjectStore.chunks(file)) {
+                reachable.add(ObjectId.fromHex(chunk));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static void addFiles(File dir, List<File> files) {
+        File[] found = dir.listFiles(File::isFile);
+        if (found != null) {
+            for (File file : found) {
+                files.add(file);
+            }
+        }
+    }
+
+    private void sweep(File file, long cutoff) {
+        String name = file.getName();
+        File dir = file.getParentFile();
+        boolean temp = name.endsWith(".tmp") || name.startsWith("tmp_") || name.endsWith(".lock");
+        if (!temp && !isObject(dir, name)) {
+            return;
+        }
+        if (file.lastModified() >= cutoff) {
+            return;
+        }
+        if (temp) {
+            if (file.delete()) {
+                temporary.incrementAndGet();
+            }
+            return;
+        }
+        String id = dir.equals(COMMITS) || dir.equals(BLOBS) ? name : dir.getName() + name;
+        if (staged.contains(id) || isReachable(id)) {
+            return;
+        }
+        if (file.delete()) {
+            objects.incrementAndGet();
+            if (dir.equals(COMMITS)) {
+                commitsRemoved = true;
+            }
+        }
+    }
+
+    /* Return whether the object named id was marked; a file named like no object never is. */
+    private boolean isReachable(String id) {
+        try {
+            return reachable.contains(ObjectId.fromHex(id));
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /* Return whether the file name in directory dir holds a loose object. */
+    private static boolean isObject(File dir, String name) {
+        if (dir.equals(COMMITS) || dir.equals(BLOBS)) {
+            return name.length() >= Utils.UID_LENGTH;
+        }
+        return dir.getParentFile().equals(ObjectStore.OBJECTS) && name.length() == Utils.UID_LENGTH - 2;
+    }
+}
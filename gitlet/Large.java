@@ -0,0 +1,330 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Stores the contents of large files outside the repository, like Git LFS. A file is large
+ *  when it is longer than large.threshold bytes, or when its path matches one of the glob
+ *  patterns listed in large.patterns, separated by commas; a pattern without a '/' matches the
+ *  name of a file in any directory (e.g. "*.iso"). Neither is set by default.
+ *
+ *  When a large file is added, its contents are copied into the large-object store, the
+ *  directory large.store (.gitlet/large by default; it may be outside the repository and
+ *  shared by several, as a stand-in for a server), and its blob is a pointer to them:
+ *      gitlet-large 1
+ *      sha1 [SHA-1 hash of the contents]
+ *      size [length of the contents]
+ *  Commits, trees, merges and checkouts only see pointers, so switching branches writes each
+ *  large file as its pointer, in time proportional to the number of pointers rather than the
+ *  size of the contents. The fetch-large command replaces pointers in the working directory
+ *  with their contents. A large file holding its contents is hashed as its pointer (see
+ *  Staged.hash), so fetching it does not modify it.
+ *
+ *  @author Xingrong Chen
+ */
+class Large {
+    private static final String HEADER = "gitlet-large 1\n";
+    /* Longest pointer, with a size of 19 digits. */
+    private static final int MAX_POINTER = HEADER.length() + 46 + 25;
+
+    /** Represents the glob patterns of large.patterns, compiled. */
+    private static class Patterns {
+        private final String source;
+        private final List<PathMatcher> paths = new ArrayList<>();
+        private final List<PathMatcher> names = new ArrayList<>();
+
+        Patterns(String source) {
+            this.source = source;
+            for (String pattern : source.split(",")) {
+                pattern = pattern.trim();
+                if (!pattern.isEmpty()) {
+                    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                    (pattern.contains("/") ? paths : names).add(matcher);
+                }
+            }
+        }
+
+        boolean matches(String fileName) {
+            Path path = Path.of(fileName);
+            for (PathMatcher matcher : paths) {
+                if (matcher.matches(path)) {
+                    return true;
+                }
+            }
+            Path name = path.getFileName();
+            for (PathMatcher matcher : names) {
+                if (matcher.matches(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** The content ID and length named by a pointer. */
+    static class Pointer {
+        final String id;
+        final long size;
+
+        Pointer(String id, long size) {
+            this.id = id;
+            this.size = size;
+        }
+
+        byte[] bytes() {
+            return (HEADER + "sha1 " + id + "\nsize " + size + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /* The patterns last compiled, recompiled when large.patterns changes (see Daemon). */
+    private static volatile Patterns patterns = new Patterns("");
+    /* The pointer blobId last computed for each large file during the running command, so
+     * that put stores its contents without hashing them again; emptied by forget. */
+    private static final Map<String, Pointer> hashed = new ConcurrentHashMap<>();
+
+    /* Return whether the file at given path in CWD, of given size, is stored as a pointer. */
+    static boolean isLarge(String fileName, long size) {
+        long threshold = Config.getLong("large.threshold", 0);
+        if (threshold > 0 && size > threshold) {
+            return true;
+        }
+        String source = Config.get("large.patterns", "");
+        Patterns current = patterns;
+        if (!current.source.equals(source)) {
+            current = new Patterns(source);
+            patterns = current;
+        }
+        return current.matches(fileName);
+    }
+
+    /* Return the blob ID of file, at given path in CWD and of given size: the hash of its
+     * pointer if it is large and holds its contents, the hash of its contents otherwise. */
+    static String blobId(String fileName, File file, long size) {
+        if (!isLarge(fileName, size) || readPointer(file) != null) {
+            return Utils.sha1(file);
+        }
+        Pointer pointer = new Pointer(Utils.sha1(file), size);
+        hashed.put(fileName, pointer);
+        return Utils.sha1(pointer.bytes());
+    }
+
+    /* Forget the pointers computed by blobId, at the end of a command, so that none is kept
+     * by a daemon or reused for a file changed since. */
+    static void forget() {
+        hashed.clear();
+    }
+
+    /* Store source, the file at given path in CWD, as the blob with given id, unless it is
+     * already stored. The contents of a large file go to the large-object store, and the blob
+     * is its pointer, which reuses the hash of the contents computed by blobId if the file has
+     * not changed size since; otherwise they are hashed while they are copied. */
+    static void put(String fileName, String id, File source) {
+        Pointer known = hashed.remove(fileName);
+        if (ObjectStore.contains(id)) {
+            return;
+        }
+        long size = source.length();
+        if (!isLarge(fileName, size) || readPointer(source) != null) {
+            ObjectStore.put(id, source);
+            return;
+        }
+        if (known != null && (known.size != size || !Utils.sha1(known.bytes()).equals(id))) {
+            known = null;
+        }
+        ObjectStore.put(id, new ByteArrayInputStream(store(source, known).bytes()));
+    }
+
+    /* Copy the contents of source into the large-object store, and return their pointer, which
+     * is known, or computed while copying if known is null. */
+    @SuppressWarnings("try")
+    private static Pointer store(File source, Pointer known) {
+        File dir = storeDir();
+        dir.mkdirs();
+        File temp = null;
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            temp = File.createTempFile("tmp_large_", null, dir);
+            Pointer pointer = known;
+            if (pointer == null) {
+                MessageDigest md = MessageDigest.getInstance("SHA-1");
+                long size;
+                try (InputStream in = new DigestInputStream(Files.newInputStream(source.toPath()), md)) {
+                    size = Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Trace.hashed(size);
+                pointer = new Pointer(Utils.toHex(md.digest()), size);
+            }
+            File target = contentFile(pointer.id);
+            if (known != null && !target.exists()) {
+                Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (!target.exists()) {
+                target.getParentFile().mkdirs();
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Durable.written(target);
+            }
+            return pointer;
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /* Replace the pointers in CWD of the files named by args, or of every file tracked by the
+     * head commit, with their contents from the large-object store, and print how many were
+     * fetched. Exits with status 1 if some contents are missing from the store. */
+    static void fetch(String[] args) {
+        Commit head = Branch.getHead();
+        List<String> files = new ArrayList<>();
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i += 1) {
+                if (!head.contains(args[i])) {
+                    System.out.println("File is not tracked: " + args[i]);
+                    Utils.exit(1);
+                }
+                files.add(args[i]);
+            }
+        } else {
+            files.addAll(head.getContentMapping().keySet());
+        }
+        Staged staged = Staged.getStaged();
+        Staged.Hashed[] fetched = new Staged.Hashed[files.size()];
+        List<String> missing = new ArrayList<>();
+        AtomicInteger count = new AtomicInteger();
+        Parallel.forEach(files.size(), i -> {
+            String file = files.get(i);
+            File target = join(CWD, file);
+            Pointer pointer = readPointer(target);
+            if (pointer == null) {
+                return;
+            }
+            String id = Utils.sha1(target);
+            if (!fetch(pointer, target)) {
+                synchronized (missing) {
+                    missing.add(file);
+                }
+                return;
+            }
+            fetched[i] = new Staged.Hashed(file, FileStat.of(target), id, false);
+            count.incrementAndGet();
+        });
+        for (Staged.Hashed file : fetched) {
+            if (file != null) {
+                staged.record(file);
+            }
+        }
+        staged.updateStageFile();
+        missing.sort(null);
+        for (String file : missing) {
+            System.out.println("Contents of large file " + file + " are missing or corrupt in the large-object store.");
+        }
+        System.out.printf("Fetched %d large files.%n", count.get());
+        if (!missing.isEmpty()) {
+            Utils.exit(1);
+        }
+    }
+
+    /* Replace target with the contents named by pointer, checking their hash, and return
+     * whether they were found intact in the store. */
+    @SuppressWarnings("try")
+    private static boolean fetch(Pointer pointer, File target) {
+        File content = contentFile(pointer.id);
+        if (!content.isFile()) {
+            return false;
+        }
+        File temp = join(target.getParentFile(), String.format(".%s.%016x.tmp", target.getName(),
+                ThreadLocalRandom.current().nextLong()));
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(content.toPath()), md)) {
+                Files.copy(in, temp.toPath());
+            }
+            if (!Utils.toHex(md.digest()).equals(pointer.id)) {
+                return false;
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /* Return the pointer file holds, or null if it does not hold a pointer. */
+    static Pointer readPointer(File file) {
+        if (!file.isFile() || file.length() > MAX_POINTER) {
+            return null;
+        }
+        return parsePointer(Utils.readContentsAsString(file));
+    }
+
+    /* Return whether the blob with given id is a pointer. */
+    static boolean isPointer(String id) {
+        try {
+            byte[] content = ObjectStore.readUpTo(id, MAX_POINTER);
+            return content != null && parsePointer(new String(content, StandardCharsets.UTF_8)) != null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Return the pointer text holds, or null if it is not a pointer. */
+    private static Pointer parsePointer(String text) {
+        if (!text.startsWith(HEADER)) {
+            return null;
+        }
+        String[] lines = text.substring(HEADER.length()).split("\n", -1);
+        if (lines.length != 3 || !lines[0].startsWith("sha1 ") || !lines[1].startsWith("size ")
+                || !lines[2].isEmpty()) {
+            return null;
+        }
+        String id = lines[0].substring(5);
+        try {
+            ObjectId.fromHex(id);
+            Pointer pointer = new Pointer(id, Long.parseLong(lines[1].substring(5)));
+            return pointer.size < 0 ? null : pointer;
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /* Return the directory of the large-object store. */
+    private static File storeDir() {
+        String dir = Config.get("large.store", null);
+        if (dir == null) {
+            return join(GITLET_DIR, "large");
+        }
+        File file = new File(dir);
+        return file.isAbsolute() ? file : join(CWD, dir);
+    }
+
+    /* Return the file of the large-object store holding the contents with given ID. */
+    private static File contentFile(String id) {
+        return join(storeDir(), id.substring(0, 2), id.substring(2));
+    }
+}
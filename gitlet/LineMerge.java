@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/** Merges two versions of a file changed from a common base version line by line, the way
+ *  diff3 does. Each version is compared to the base; lines changed on only one side take that
+ *  side's version, and only regions changed on both sides in different ways are conflicts,
+ *  written between "<<<<<<< HEAD", "=======" and ">>>>>>>" lines. Changes touching the same or
+ *  adjacent base lines are taken to overlap.
+ *
+ *  @author Xingrong Chen
+ */
+class LineMerge {
+
+    /* Write the merge of ours and theirs, both changed from base, to out, and return whether
+     * there were conflicts. */
+    static boolean merge(Diff.Lines base, Diff.Lines ours, Diff.Lines theirs, OutputStream out)
+            throws IOException {
+        List<Diff.Edit> oursEdits = Diff.diff(base, ours);
+        List<Diff.Edit> theirsEdits = Diff.diff(base, theirs);
+        boolean conflict = false;
+        /* Base lines before done were written already. */
+        int done = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oursEdits.size() || j < theirsEdits.size()) {
+            /* Collect the edits of both sides overlapping the region of base lines lo to hi - 1,
+             * starting with the first edit of either side. */
+            int lo = Math.min(i < oursEdits.size() ? oursEdits.get(i).aStart : Integer.MAX_VALUE,
+                    j < theirsEdits.size() ? theirsEdits.get(j).aStart : Integer.MAX_VALUE);
+            int hi = lo;
+            int oursFirst = i;
+            int theirsFirst = j;
+            while (true) {
+                if (i < oursEdits.size() && oursEdits.get(i).aStart <= hi) {
+                    hi = Math.max(hi, oursEdits.get(i).aEnd);
+                    i += 1;
+                } else if (j < theirsEdits.size() && theirsEdits.get(j).aStart <= hi) {
+                    hi = Math.max(hi, theirsEdits.get(j).aEnd);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            base.write(out, done, lo);
+            done = hi;
+            if (i == oursFirst) {
+                theirs.write(out, start(theirsEdits, theirsFirst, lo), end(theirsEdits, j, hi));
+                continue;
+            } else if (j == theirsFirst) {
+                ours.write(out, start(oursEdits, oursFirst, lo), end(oursEdits, i, hi));
+                continue;
+            }
+            int oursLo = start(oursEdits, oursFirst, lo);
+            int oursHi = end(oursEdits, i, hi);
+            int theirsLo = start(theirsEdits, theirsFirst, lo);
+            int theirsHi = end(theirsEdits, j, hi);
+            if (ours.equalLines(oursLo, oursHi, theirs, theirsLo, theirsHi)) {
+                /* Both sides made the same change. */
+                ours.write(out, oursLo, oursHi);
+                continue;
+            }
+            conflict = true;
+            out.write("<<<<<<< HEAD\n".getBytes());
+            ours.write(out, oursLo, oursHi);
+            out.write("=======\n".getBytes());
+            theirs.write(out, theirsLo, theirsHi);
+            out.write(">>>>>>>\n".getBytes());
+        }
+        base.write(out, done, base.size());
+        return conflict;
+    }
+
+    /* Return the first line of a side corresponding to base line lo, given that edits[first] is
+     * the first edit of the side in the region starting at lo. */
+    private static int start(List<Diff.Edit> edits, int first, int lo) {
+        Diff.Edit edit = edits.get(first);
+        return edit.bStart - (edit.aStart - lo);
+    }
+
+    /* Return the line of a side corresponding to base line hi, given that edits[end - 1] is
+     * the last edit of the side in the region ending at hi. */
+    private static int end(List<Diff.Edit> edits, int end, int hi) {
+        Diff.Edit edit = edits.get(end - 1);
+        return edit.bEnd + (hi - edit.aEnd);
+    }
+}
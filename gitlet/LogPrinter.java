@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/** Prints the history of a commit, following first parents, for the log command.
+ *  Commits are read one at a time as they are printed, so printing stops reading history
+ *  as soon as enough commits were printed, or when the reader of the output went away
+ *  (e.g. "log | head").
+ *
+ *  Options: -n N prints at most N commits, --since=DATE and --until=DATE only print commits
+ *  made in that period (DATE is yyyy-MM-dd, optionally followed by HH:mm or HH:mm:ss), which
+ *  are looked for along the whole history since dates need not decrease along it,
+ *  --oneline prints each commit as its abbreviated id and message, and --format=FORMAT prints
+ *  each commit as FORMAT with %H (id), %h (abbreviated id), %P (parent ids), %p (abbreviated
+ *  parent ids), %d (date), %s (message), %n (newline) and %% replaced.
+ *
+ *  @author Xingrong Chen
+ */
+class LogPrinter {
+    /* Length of abbreviated ids. */
+    private static final int SHORT_ID = 7;
+    /* Output is checked for a closed reader after this many commits. */
+    private static final int CHECK_INTERVAL = 64;
+    private static final String[] DATE_FORMATS = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd"};
+
+    private int maxCount = -1;
+    private Date since;
+    private Date until;
+    /* Format of each commit, null for the default format of log. */
+    private String format;
+    private String start;
+
+    /* Return the printer for the arguments of a log command, args[0] being "log". */
+    static LogPrinter parse(String[] args) {
+        LogPrinter printer = new LogPrinter();
+        for (int i = 1; i < args.length; i += 1) {
+            String arg = args[i];
+            if (arg.equals("-n") && i + 1 < args.length) {
+                i += 1;
+                printer.maxCount = parseCount(args[i]);
+            } else if (arg.startsWith("-n") && arg.length() > 2) {
+                printer.maxCount = parseCount(arg.substring(2));
+            } else if (arg.startsWith("--since=")) {
+                printer.since = parseDate(arg.substring("--since=".length()));
+            } else if (arg.startsWith("--until=")) {
+                printer.until = parseDate(arg.substring("--until=".length()));
+            } else if (arg.equals("--oneline")) {
+                printer.format = "%h %s";
+            } else if (arg.startsWith("--format=")) {
+                printer.format = arg.substring("--format=".length());
+            } else if (!arg.startsWith("-") && printer.start == null) {
+                printer.start = arg;
+            } else {
+                System.out.println("Invalid log option: " + arg);
+                Utils.exit(1);
+            }
+        }
+        return printer;
+    }
+
+    private static int parseCount(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        System.out.println("Invalid number of commits: " + value);
+        Utils.exit(1);
+        return 0;
+    }
+
+    private static Date parseDate(String value) {
+        for (String pattern : DATE_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            try {
+                return format.parse(value);
+            } catch (ParseException excp) {
+                /* Try the next format. */
+            }
+        }
+        System.out.println("Invalid date: " + value);
+        Utils.exit(1);
+        return null;
+    }
+
+    /* Print the history, starting from the head commit unless a commit was given. */
+    void print() {
+        String nodeID = start == null ? Branch.getHeadId() : Commit.resolveID(start);
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, Utils.IO_BUFFER_SIZE));
+        int printed = 0;
+        while (nodeID != null && printed != maxCount) {
+            Commit node = Commit.getCommitByID(nodeID);
+            Date date = node.getCommitDate();
+            /* Commits outside the period are skipped, not taken as the end of it: dates may go
+               back and forth along the history, after clock skew or merges of older work. */
+            if ((since == null || !date.before(since)) && (until == null || !date.after(until))) {
+                print(out, nodeID, node);
+                printed += 1;
+                if (printed % CHECK_INTERVAL == 0) {
+                    out.flush();
+                    if (System.out.checkError()) {
+                        /* Nobody reads the output any more. */
+                        return;
+                    }
+                }
+            }
+            nodeID = node.getParent();
+        }
+        out.flush();
+    }
+
+    private void print(PrintStream out, String id, Commit commit) {
+        if (format == null) {
+            Commit.display(out, id, commit.getParent(), commit.getSecondParent(),
+                    commit.getCommitDate(), commit.getMessage());
+            return;
+        }
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < format.length(); i += 1) {
+            char c = format.charAt(i);
+            if (c != '%' || i + 1 == format.length()) {
+                line.append(c);
+                continue;
+            }
+            i += 1;
+            switch (format.charAt(i)) {
+                case 'H' -> line.append(id);
+                case 'h' -> line.append(id, 0, SHORT_ID);
+                case 'P' -> appendParents(line, commit, Utils.UID_LENGTH);
+                case 'p' -> appendParents(line, commit, SHORT_ID);
+                case 'd' -> line.append(commit.getCommitDate());
+                case 's' -> line.append(commit.getMessage());
+                case 'n' -> line.append(System.lineSeparator());
+                case '%' -> line.append('%');
+                default -> line.append('%').append(format.charAt(i));
+            }
+        }
+        out.println(line);
+    }
+
+    private static void appendParents(StringBuilder line, Commit commit, int length) {
+        if (commit.getParent() != null) {
+            line.append(commit.getParent(), 0, length);
+        }
+        if (commit.getSecondParent() != null) {
+            line.append(' ').append(commit.getSecondParent(), 0, length);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package gitlet;
 
+import java.util.Set;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Xingrong Chen
@@ -7,46 +8,98 @@ package gitlet;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  [--trace] [--jobs N] <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
 
+    /* Commands which only read the repository, and those which change it, see RepoLock. */
+    private static final Set<String> READING = Set.of("log", "global-log", "find", "status", "diff",
+            "fsck");
+    private static final Set<String> WRITING = Set.of("add", "rm", "commit", "checkout", "branch",
+            "rm-branch", "reset", "merge", "repack", "gc", "fetch-large");
+
     public static void main(String[] args) {
+        boolean cacheStats = System.getenv("GITLET_CACHE_STATS") != null;
+        if (System.getenv("GITLET_TRACE") != null) {
+            /* Passed on as an option, so that a daemon executing the command traces it too. */
+            String[] traced = new String[args.length + 1];
+            traced[0] = "--trace";
+            System.arraycopy(args, 0, traced, 1, args.length);
+            args = traced;
+        }
+        /* Let a running daemon execute the command, if there is one. */
+        Integer status = args.length > 0 ? Daemon.forward(args, cacheStats) : null;
+        if (status == null) {
+            if (cacheStats) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(Commit.cacheStats())));
+            }
+            status = execute(args);
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /* Execute the command given by args, and return its exit status. */
+    static int execute(String[] args) {
+        /* A command which fails with an exception exits with status 1. */
+        int status = 1;
+        try {
+            run(args);
+            status = 0;
+        } catch (Utils.ExitException excp) {
+            status = excp.status;
+        } finally {
+            /* Files written after the last ref update, such as the index. */
+            Durable.sync();
+            Large.forget();
+            RepoLock.release();
+            Trace.finish(status);
+        }
+        return status;
+    }
+
+    private static void run(String[] args) {
+        args = Trace.parse(args);
+        args = Parallel.parseJobs(args);
         if (args.length == 0) {
             System.out.println("Pleas enter a command");
-            System.exit(0);
+            Utils.exit(0);
         }
 
         String firstArg = args[0];
         checkExist(firstArg);
+        if (READING.contains(firstArg) || WRITING.contains(firstArg)) {
+            RepoLock.acquire(READING.contains(firstArg));
+        }
         switch (firstArg) {
             case "init" -> Repository.creatRepository();
             case "add" -> {
                 if (args.length <= 1 || args[1] == null || args[1].equals("")) {
                     System.out.println("Please enter a file name");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.add(args);
             }
             case "rm" -> {
                 if (args.length <= 1 || args[1] == null || args[1].equals("")) {
                     System.out.println("Please enter a file name");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.rm(args[1]);
             }
             case "commit" -> {
                 if (args.length <= 1 || args[1] == null || args[1].isEmpty()) {
                     System.out.println("Please enter a commit message");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.commit(args[1]);
             }
-            case "log" -> Repository.printLog();
+            case "log" -> Repository.printLog(args);
             case "status" -> Repository.printStatus();
             case "checkout" -> {
                 if (args.length <= 1 || args[1] == null || args[1].equals("")) {
                     System.out.println("Please enter a file name to checkout");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 if (args.length == 2) {
                     Repository.checkOutBranch(args[1]);
@@ -62,44 +115,66 @@ public class Main {
                 }
             }
             case "global-log" -> Repository.globalLog();
+            case "diff" -> DiffPrinter.print(args);
             case "find" -> {
                 if (args.length <= 1 || args[1] == null || args[1].isEmpty()) {
                     System.out.println("Please enter a commit message");
-                    System.exit(0);
+                    Utils.exit(0);
+                }
+                if ((args[1].equals("--words") || args[1].equals("--substring")) && args.length == 3) {
+                    Repository.findWithMsg(args[1], args[2]);
+                } else {
+                    Repository.findWithMsg(null, args[1]);
                 }
-                Repository.findWithMsg(args[1]);
             }
             case "branch" -> {
                 if (args.length <= 1 || args[1] == null || args[1].isEmpty()) {
                     System.out.println("Please enter a branch name");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.branch(args[1]);
             }
             case "rm-branch" -> {
                 if (args.length <= 1 || args[1] == null || args[1].isEmpty()) {
                     System.out.println("Please enter a branch name");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.removeBranch(args[1]);
             }
             case "reset" -> {
                 if (args.length <= 1 || args[1] == null || args[1].isEmpty()) {
                     System.out.println("Please enter a commit id.");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.reset(args[1]);
             }
             case "merge" -> {
                 if (args.length <= 1 || args[1] == null || args[1].isEmpty()) {
                     System.out.println("Please enter a branch name");
-                    System.exit(0);
+                    Utils.exit(0);
                 }
                 Repository.merge(args[1]);
             }
+            case "repack" -> Repository.repack();
+            case "fsck" -> Repository.fsck();
+            case "gc" -> {
+                if (args.length > 2 || (args.length == 2 && !args[1].equals("--now"))) {
+                    System.out.println("Incorrect operands.");
+                    Utils.exit(0);
+                }
+                Repository.gc(args.length == 2);
+            }
+            case "fetch-large" -> Large.fetch(args);
+            case "daemon" -> {
+                if (args.length > 1 && args[1].equals("stop")) {
+                    System.out.println("No gitlet daemon is running.");
+                    Utils.exit(1);
+                }
+                Daemon.serve();
+            }
             default -> {
                 System.out.println("No command with that name exists");
-                System.exit(0);
+                Utils.exit(0);
             }
         }
     }
@@ -107,7 +182,7 @@ public class Main {
     private static void checkExist(String arg) {
         if (!arg.equals("init") && !Repository.isRepositoryDir()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(1);
+            Utils.exit(1);
         }
     }
 
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Represents the encoding applied to the body of an object in the object store.
+ *  Every stored object starts with the one-byte tag of the codec it was written with,
+ *  so objects written with different codecs can live side by side in one repository,
+ *  and the codec used for new objects can be changed at any time through the
+ *  "core.compression" setting of .gitlet/config.
+ *
+ *  @author Xingrong Chen
+ */
+public interface ObjectCodec {
+
+    /** Objects are stored as they are. */
+    ObjectCodec NONE = new ObjectCodec() {
+        @Override
+        public int tag() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+    };
+
+    /** Objects are compressed with zlib deflate, the same as git loose objects. */
+    ObjectCodec DEFLATE = new ObjectCodec() {
+        @Override
+        public int tag() {
+            return 1;
+        }
+
+        @Override
+        public String name() {
+            return "deflate";
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            Deflater deflater = new Deflater(Config.getInt("core.compressionLevel",
+                    Deflater.DEFAULT_COMPRESSION));
+            return new DeflaterOutputStream(out, deflater, Utils.IO_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    def.end();
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, Utils.IO_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+    };
+
+    /** All known codecs, indexed by their tag. */
+    ObjectCodec[] CODECS = {NONE, DEFLATE};
+
+    /** The tag written in front of every object encoded with this codec. */
+    int tag();
+
+    /** The name used to select this codec in .gitlet/config. */
+    String name();
+
+    /** Wrap OUT so that everything written to it is encoded. */
+    OutputStream encode(OutputStream out) throws IOException;
+
+    /** Wrap IN so that everything read from it is decoded. */
+    InputStream decode(InputStream in) throws IOException;
+
+    /* Return the codec with the given tag. */
+    static ObjectCodec forTag(int tag) {
+        if (tag < 0 || tag >= CODECS.length) {
+            throw Utils.error("Unknown object codec %d.", tag);
+        }
+        return CODECS[tag];
+    }
+
+    /* Return the codec new objects should be written with. */
+    static ObjectCodec configured() {
+        String name = Config.get("core.compression", DEFLATE.name());
+        for (ObjectCodec codec : CODECS) {
+            if (codec.name().equals(name)) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown object codec %s.", name);
+    }
+}
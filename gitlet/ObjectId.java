@@ -0,0 +1,108 @@
+package gitlet;
+
+/** Represents the 20-byte SHA-1 ID of an object, held as three numbers rather than as a String
+ *  of 40 hexadecimal digits, for sets and maps holding many IDs: an ObjectId takes about a third
+ *  of the memory of the String, and is hashed and compared without looking at characters.
+ *  ObjectIds are ordered as their hexadecimal forms are.
+ *
+ *  @author Xingrong Chen
+ */
+final class ObjectId implements Comparable<ObjectId> {
+    /* Number of bytes of an ID. */
+    static final int LENGTH = Utils.UID_LENGTH / 2;
+
+    /* Bytes 0 to 7, 8 to 15 and 16 to 19 of the ID, big-endian. */
+    private final long first;
+    private final long second;
+    private final int third;
+
+    private ObjectId(long first, long second, int third) {
+        this.first = first;
+        this.second = second;
+        this.third = third;
+    }
+
+    /* Return the ID whose hexadecimal form is id. */
+    static ObjectId fromHex(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + id);
+        }
+        byte[] raw = new byte[LENGTH];
+        Utils.fromHex(id, raw, 0);
+        return fromBytes(raw, 0);
+    }
+
+    /* Return whether name is the hexadecimal form of an ID, as the names of stored objects are;
+     * the temporary files of interrupted writes are not. */
+    static boolean isHex(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Return the ID stored in the LENGTH bytes of raw starting at offset. */
+    static ObjectId fromBytes(byte[] raw, int offset) {
+        return new ObjectId(readLong(raw, offset), readLong(raw, offset + 8),
+                (int) (readLong(raw, offset + 12) & 0xffffffffL));
+    }
+
+    /* Store this ID into the LENGTH bytes of dest starting at offset. */
+    void copyTo(byte[] dest, int offset) {
+        for (int i = 0; i < 8; i += 1) {
+            dest[offset + i] = (byte) (first >>> (56 - 8 * i));
+            dest[offset + 8 + i] = (byte) (second >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i += 1) {
+            dest[offset + 16 + i] = (byte) (third >>> (24 - 8 * i));
+        }
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i += 1) {
+            result = result << 8 | (raw[offset + i] & 0xff);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return first == other.first && second == other.second && third == other.third;
+    }
+
+    @Override
+    public int hashCode() {
+        /* The bits of a SHA-1 hash are already evenly spread. */
+        return (int) first;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        if (first != other.first) {
+            return Long.compareUnsigned(first, other.first);
+        }
+        if (second != other.second) {
+            return Long.compareUnsigned(second, other.second);
+        }
+        return Integer.compareUnsigned(third, other.third);
+    }
+
+    /* Return the hexadecimal form of this ID. */
+    @Override
+    public String toString() {
+        byte[] raw = new byte[LENGTH];
+        copyTo(raw, 0);
+        return Utils.toHex(raw);
+    }
+}
@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static gitlet.Repository.BLOBS;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.copyContents;
+import static gitlet.Utils.join;
+
+/** Represents the content-addressed store of blobs (the contents of tracked files).
+ *  An object with id "abcdef..." lives in .gitlet/objects/ab/cdef..., its first byte
+ *  is the tag of the ObjectCodec the rest of the file was encoded with.
+ *  Objects written by older versions of gitlet are kept uncompressed in the flat
+ *  .gitlet/blobs directory; they are still found there when reading.
+ *  Files larger than chunk.threshold are stored in chunks (see Chunker): their object
+ *  only holds the manifest of the chunks, and its tag has the MANIFEST bit set.
+ *
+ *  @author Xingrong Chen
+ */
+public class ObjectStore {
+    public static final File OBJECTS = join(GITLET_DIR, "objects");
+    /* Bit of the tag of an object which holds a chunk manifest rather than the contents. */
+    static final int MANIFEST = 0x80;
+
+    /* Return the file which holds (or would hold) the object with given id. */
+    public static File objectFile(String id) {
+        return join(OBJECTS, id.substring(0, 2), id.substring(2));
+    }
+
+    /* Return if the object with given id is stored in this repository. */
+    public static boolean contains(String id) {
+        return Pack.contains(id) || objectFile(id).exists() || join(BLOBS, id).exists();
+    }
+
+    /* Store the contents of source as the object with given id, unless it is already stored.
+     * The object is encoded into a temporary file and then renamed into place, so a
+     * partially written object is never visible under its id. Large files are stored in
+     * chunks, so that only the chunks which changed since an earlier version are written. */
+    public static void put(String id, File source) {
+        if (Chunker.chunked(source.length()) && !contains(id)) {
+            byte[] manifest = Chunker.split(source);
+            store(id, new ByteArrayInputStream(manifest), MANIFEST);
+            return;
+        }
+        try {
+            put(id, Files.newInputStream(source.toPath()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Store the contents of source as the object with given id, unless it is already stored.
+     * The stream is closed. */
+    public static void put(String id, InputStream source) {
+        store(id, source, 0);
+    }
+
+    /* Store source as the object with given id, with the given bits added to its tag. */
+    @SuppressWarnings("try")
+    private static void store(String id, InputStream source, int flags) {
+        File target = objectFile(id);
+        if (target.exists() || Pack.contains(id)) {
+            try {
+                source.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        }
+        File dir = target.getParentFile();
+        dir.mkdirs();
+        ObjectCodec codec = ObjectCodec.configured();
+        File temp = null;
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            temp = File.createTempFile("tmp_obj_", null, dir);
+            try (source; OutputStream raw = Files.newOutputStream(temp.toPath())) {
+                raw.write(flags | codec.tag());
+                try (OutputStream out = codec.encode(raw)) {
+                    source.transferTo(out);
+                }
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Durable.written(target);
+            Trace.objectWritten();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /* Return a stream of the decoded contents of the object with given id,
+     * packed objects are looked up first. */
+    public static InputStream open(String id) {
+        Trace.objectRead();
+        InputStream packed = Pack.open(id);
+        if (packed != null) {
+            return packed;
+        }
+        try {
+            File file = objectFile(id);
+            if (!file.exists()) {
+                return Files.newInputStream(legacyFile(id).toPath());
+            }
+            return openLoose(file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Return a stream of the decoded contents of the loose object stored in file. The contents
+     * of a chunked object are read from its chunks, one after the other. */
+    static InputStream openLoose(File file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), Utils.IO_BUFFER_SIZE);
+        int tag = in.read();
+        if (tag < 0 || (tag & MANIFEST) == 0) {
+            return ObjectCodec.forTag(tag).decode(in);
+        }
+        return Chunker.join(readManifest(in, tag));
+    }
+
+    /* Return the IDs of the chunks of the loose object stored in file, none if it is not
+     * stored in chunks. */
+    static List<String> chunks(File file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        int tag = in.read();
+        if (tag < 0 || (tag & MANIFEST) == 0) {
+            in.close();
+            return List.of();
+        }
+        return Chunker.chunkIds(readManifest(in, tag));
+    }
+
+    /* Return if the object with given id is a loose object stored in chunks. */
+    static boolean isChunked(String id) {
+        File file = objectFile(id);
+        if (Pack.contains(id) || !file.exists()) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return (readTag(in) & MANIFEST) != 0;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Read the rest of in, a manifest encoded with the codec of tag, and close it. */
+    private static byte[] readManifest(InputStream in, int tag) throws IOException {
+        try (InputStream body = ObjectCodec.forTag(tag & ~MANIFEST).decode(in)) {
+            return body.readAllBytes();
+        }
+    }
+
+    /* Return the contents of the object with given id, or null if it is longer than limit
+     * bytes; no more than limit + 1 bytes of it are read. */
+    static byte[] readUpTo(String id, int limit) throws IOException {
+        try (InputStream in = open(id)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[Utils.IO_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                content.write(buffer, 0, n);
+                if (content.size() > limit) {
+                    return null;
+                }
+            }
+            return content.toByteArray();
+        }
+    }
+
+    /* Write the contents of the object with given id to dest, creating its directory if needed.
+     * The contents are written to a temporary file next to dest, which is then renamed over dest,
+     * so dest never holds a partly written file. */
+    @SuppressWarnings("try")
+    public static void copyTo(String id, File dest) {
+        File dir = dest.getParentFile();
+        dir.mkdirs();
+        File temp = join(dir, String.format(".%s.%016x.tmp", dest.getName(),
+                ThreadLocalRandom.current().nextLong()));
+        try (Trace.Span span = Trace.start(Trace.WRITE)) {
+            write(id, temp);
+            Files.move(temp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /* Write the contents of the object with given id to the new file dest. */
+    private static void write(String id, File dest) throws IOException {
+        File file = objectFile(id);
+        if (!Pack.contains(id)) {
+            if (!file.exists()) {
+                Trace.objectRead();
+                copyContents(legacyFile(id), dest);
+                return;
+            }
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (readTag(in) == ObjectCodec.NONE.tag()) {
+                    Trace.objectRead();
+                    /* Nothing to decode, let the file system copy the bytes. */
+                    try (FileChannel out = FileChannel.open(dest.toPath(), StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE_NEW)) {
+                        long size = in.size();
+                        long position = 1;
+                        while (position < size) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        try (InputStream in = open(id)) {
+            Files.copy(in, dest.toPath());
+        }
+    }
+
+    /* Return the blob file written by older versions of gitlet. */
+    private static File legacyFile(String id) {
+        File file = join(BLOBS, id);
+        if (!file.exists()) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return file;
+    }
+
+    private static int readTag(FileChannel in) throws IOException {
+        ByteBuffer tag = ByteBuffer.allocate(1);
+        if (in.read(tag, 0) != 1) {
+            throw Utils.error("Corrupt object file.");
+        }
+        return tag.get(0) & 0xff;
+    }
+}
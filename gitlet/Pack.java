@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Represents a packfile, which stores many commits and blobs in a single file.
+ *  Similar versions of a blob are stored as deltas against each other (see Delta).
+ *
+ *  A pack starts with magic "PACK", a version and the number of entries, and ends
+ *  with the SHA-1 of everything before it. Each entry is a type byte, followed, for
+ *  a delta, by the 20-byte id of its base, followed by the deflated payload.
+ *  The objects in .gitlet/pack/pack-X.pack are listed in .gitlet/pack/pack-X.idx.
+ *
+ *  @author Xingrong Chen
+ */
+class Pack {
+    public static final File PACK_DIR = join(GITLET_DIR, "pack");
+
+    static final int MAGIC = 0x5041434b;
+    static final int VERSION = 1;
+
+    /* Entry types. */
+    static final int COMMIT = 1;
+    static final int BLOB = 2;
+    static final int DELTA = 3;
+    static final int TREE = 4;
+
+    /* All packs of this repository, loaded on first use. */
+    private static List<Pack> packs;
+
+    private final File packFile;
+    private final File indexFile;
+    private final PackIndex index;
+    private FileChannel channel;
+
+    private Pack(File indexFile) {
+        this.indexFile = indexFile;
+        String name = indexFile.getName();
+        this.packFile = join(PACK_DIR, name.substring(0, name.length() - 4) + ".pack");
+        this.index = new PackIndex(indexFile);
+    }
+
+    /* Return all packs of this repository. */
+    static synchronized List<Pack> all() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(PACK_DIR);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.startsWith("pack-") && name.endsWith(".idx")) {
+                        packs.add(new Pack(join(PACK_DIR, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /* Forget the loaded packs, so that the next lookup sees packs written since. */
+    static synchronized void reload() {
+        if (packs != null) {
+            for (Pack pack : packs) {
+                pack.close();
+            }
+        }
+        packs = null;
+    }
+
+    /* Return if the object with given id is in some pack. */
+    static boolean contains(String id) {
+        return locate(Utils.fromHex(id)) != null;
+    }
+
+    /* Return the contents of the object with given id, or null if it is not packed. */
+    static byte[] read(String id) {
+        Pack pack = locate(Utils.fromHex(id));
+        if (pack == null) {
+            return null;
+        }
+        Trace.objectRead();
+        return pack.readObject(Utils.fromHex(id));
+    }
+
+    /* Return a stream of the contents of the object with given id, or null if it is not packed.
+     * Entries stored whole are inflated as they are read. */
+    static InputStream open(String id) {
+        byte[] rawId = Utils.fromHex(id);
+        Pack pack = locate(rawId);
+        if (pack == null) {
+            return null;
+        }
+        long offset = pack.index.offset(pack.index.find(rawId));
+        if (pack.typeAt(offset) == DELTA) {
+            return new ByteArrayInputStream(pack.readObject(rawId));
+        }
+        return pack.payload(offset + 1);
+    }
+
+    /* Add to result the ids of packed objects of given type whose id starts with prefix. */
+    static void resolve(String prefix, int type, Collection<String> result) {
+        for (Pack pack : all()) {
+            List<String> matches = new ArrayList<>();
+            pack.index.resolve(prefix, matches);
+            for (String id : matches) {
+                if (pack.typeAt(pack.index.offset(pack.index.find(Utils.fromHex(id)))) == type) {
+                    result.add(id);
+                }
+            }
+        }
+    }
+
+    /* Return the ids of all packed commits. */
+    static List<String> commitIds() {
+        List<String> result = new ArrayList<>();
+        for (Pack pack : all()) {
+            for (int k = 0; k < pack.index.size(); k += 1) {
+                if (pack.typeAt(pack.index.offset(k)) == COMMIT) {
+                    result.add(Utils.toHex(pack.index.id(k)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /* Add the id of every packed object to result, mapped to its type; deltas are blobs. */
+    static void types(Map<String, Integer> result) {
+        for (Pack pack : all()) {
+            for (int k = 0; k < pack.index.size(); k += 1) {
+                int type = pack.typeAt(pack.index.offset(k));
+                result.put(Utils.toHex(pack.index.id(k)), type == DELTA ? BLOB : type);
+            }
+        }
+    }
+
+    private static Pack locate(byte[] id) {
+        for (Pack pack : all()) {
+            if (pack.index.find(id) >= 0) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    File packFile() {
+        return packFile;
+    }
+
+    File indexFile() {
+        return indexFile;
+    }
+
+    /* Return the full contents of the object with given id in this pack, resolving deltas. */
+    private byte[] readObject(byte[] id) {
+        long offset = index.offset(index.find(id));
+        if (typeAt(offset) != DELTA) {
+            return readAll(payload(offset + 1));
+        }
+        byte[] baseId = new byte[PackIndex.ID_LENGTH];
+        readFully(ByteBuffer.wrap(baseId), offset + 1);
+        byte[] delta = readAll(payload(offset + 1 + PackIndex.ID_LENGTH));
+        return Delta.apply(readObject(baseId), delta);
+    }
+
+    private int typeAt(long offset) {
+        ByteBuffer type = ByteBuffer.allocate(1);
+        readFully(type, offset);
+        return type.get(0);
+    }
+
+    /* Return the inflated stream of the payload starting at given offset. */
+    private InputStream payload(long offset) {
+        InputStream raw = new InputStream() {
+            private long position = offset;
+            private final ByteBuffer single = ByteBuffer.allocate(1);
+
+            @Override
+            public int read() throws IOException {
+                single.clear();
+                int n = read(single.array(), 0, 1);
+                return n <= 0 ? -1 : single.get(0) & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = channel().read(ByteBuffer.wrap(b, off, len), position);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            }
+        };
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(raw, inflater, Utils.IO_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    private void readFully(ByteBuffer target, long offset) {
+        try {
+            while (target.hasRemaining()) {
+                if (channel().read(target, offset + target.position()) < 0) {
+                    throw Utils.error("Truncated pack %s.", packFile.getName());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Return the channel of the pack file, reads at explicit positions so threads may share it. */
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    private synchronized void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    static byte[] readAll(InputStream in) {
+        try (in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
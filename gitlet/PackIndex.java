@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/** Represents the index of a packfile: the sorted ids of every object in the pack and
+ *  the offset of each object in the pack file. The index is memory-mapped, so finding
+ *  an object is a binary search over the mapped ids with no read system calls.
+ *
+ *  Layout: magic "GIDX", version, object count, a fanout table of 256 ints whose entry b
+ *  is the number of ids with first byte at most b, the 20-byte ids in ascending order,
+ *  the 8-byte pack offset of each id, and the 20-byte checksum of the pack.
+ *  The fanout table narrows every search to the ids sharing the first byte, like the
+ *  .idx files of git. Version 1 indexes have no fanout table and are searched whole.
+ *
+ *  @author Xingrong Chen
+ */
+class PackIndex {
+
+    static final int MAGIC = 0x47494458;
+    static final int VERSION = 2;
+    static final int ID_LENGTH = 20;
+    private static final int HEADER_LENGTH = 12;
+    private static final int FANOUT_LENGTH = 256 * 4;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    /* Whether this index has a fanout table. */
+    private final boolean fanout;
+    /* Offset of the first id in buffer. */
+    private final int idsStart;
+
+    PackIndex(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+            throw Utils.error("Unsupported pack index %s.", file.getName());
+        }
+        count = buffer.getInt(8);
+        fanout = version >= 2;
+        idsStart = HEADER_LENGTH + (fanout ? FANOUT_LENGTH : 0);
+    }
+
+    /* Return the number of objects in the pack. */
+    int size() {
+        return count;
+    }
+
+    /* Return the position of the object with given id, or -1 if it is not in the pack. */
+    int find(byte[] id) {
+        int low = start(id[0]);
+        int high = end(id[0]) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /* Add to result the hexadecimal ids of the objects whose id starts with the given
+     * hexadecimal prefix. */
+    void resolve(String prefix, Collection<String> result) {
+        byte[] low = Utils.fromHex((prefix + "0".repeat(2 * ID_LENGTH)).substring(0, 2 * ID_LENGTH));
+        /* Lower bound: the first id which is not less than the prefix padded with zeros. */
+        int first = start(low[0]);
+        int last = end(low[0]);
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (compare(mid, low) < 0) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        for (int k = first; k < count; k += 1) {
+            String id = Utils.toHex(id(k));
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+    }
+
+    /* Return the id of the object at given position. */
+    byte[] id(int position) {
+        byte[] id = new byte[ID_LENGTH];
+        buffer.get(idsStart + position * ID_LENGTH, id);
+        return id;
+    }
+
+    /* Return the offset in the pack file of the object at given position. */
+    long offset(int position) {
+        return buffer.getLong(idsStart + count * ID_LENGTH + position * 8);
+    }
+
+    /* Return the checksum stored at the end of the index. */
+    byte[] checksum() {
+        byte[] checksum = new byte[ID_LENGTH];
+        buffer.get(idsStart + count * (ID_LENGTH + 8), checksum);
+        return checksum;
+    }
+
+    /* Return the position of the first id whose first byte is the given one. */
+    private int start(byte first) {
+        int b = first & 0xff;
+        if (!fanout || b == 0) {
+            return 0;
+        }
+        return buffer.getInt(HEADER_LENGTH + (b - 1) * 4);
+    }
+
+    /* Return the position after the last id whose first byte is the given one. */
+    private int end(byte first) {
+        if (!fanout) {
+            return count;
+        }
+        return buffer.getInt(HEADER_LENGTH + (first & 0xff) * 4);
+    }
+
+    /* Compare the id at given position with id, treating bytes as unsigned. */
+    private int compare(int position, byte[] id) {
+        int base = idsStart + position * ID_LENGTH;
+        for (int k = 0; k < ID_LENGTH; k += 1) {
+            int cmp = Integer.compare(buffer.get(base + k) & 0xff, id[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /* Write the index of a pack with given checksum, the ids must be sorted. */
+    static byte[] encode(byte[][] ids, long[] offsets, byte[] checksum) {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_LENGTH + FANOUT_LENGTH
+                + ids.length * (ID_LENGTH + 8) + ID_LENGTH);
+        out.putInt(MAGIC).putInt(VERSION).putInt(ids.length);
+        int[] fanoutTable = new int[256];
+        for (byte[] id : ids) {
+            fanoutTable[id[0] & 0xff] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < 256; b += 1) {
+            total += fanoutTable[b];
+            out.putInt(total);
+        }
+        for (byte[] id : ids) {
+            out.put(id);
+        }
+        for (long offset : offsets) {
+            out.putLong(offset);
+        }
+        out.put(checksum);
+        return out.array();
+    }
+}
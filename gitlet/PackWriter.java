@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static gitlet.Repository.BLOBS;
+import static gitlet.Repository.COMMITS;
+import static gitlet.Utils.join;
+
+/** Writes every commit, and every tree and blob a commit refers to, into a single new pack,
+ *  replacing the loose objects and the packs written before.
+ *
+ *  Blobs are grouped by the path they are tracked under. The newest version of a path
+ *  is stored whole, each older version is stored as a delta against the next newer one
+ *  when the delta is less than half its size, the same trade-off git makes: recent
+ *  versions are read most often and decode fastest. Blobs stored in chunks (see Chunker)
+ *  stay loose with their chunks, which versions of the file already share.
+ *
+ *  @author Xingrong Chen
+ */
+class PackWriter {
+
+    /** Longest chain of deltas a blob may need to be rebuilt. */
+    private final int maxDepth = Config.getInt("pack.depth", 10);
+    /** Blobs larger than this are stored whole, without being loaded into memory. */
+    private final int deltaLimit = Config.getInt("pack.deltaLimit", 16 << 20);
+
+    private final Map<String, Long> offsets = new TreeMap<>();
+    private int deltas;
+    private File index;
+    private CountingOutputStream out;
+
+    /* Pack all objects of the repository, and print how many were packed. */
+    static void repack() {
+        PackWriter writer = new PackWriter();
+        writer.write();
+        System.out.printf("Packed %d objects (%d deltas).%n", writer.offsets.size(), writer.deltas);
+    }
+
+    private void write() {
+        List<String> commitIds = Commit.allCommitIds();
+        List<Commit> commits = new ArrayList<>();
+        for (String id : commitIds) {
+            commits.add(Commit.getCommitByID(id));
+        }
+        Set<String> trees = reachableTrees(commits);
+        Map<String, List<String>> versions = versionsByPath(commits);
+        List<Pack> oldPacks = new ArrayList<>(Pack.all());
+
+        Pack.PACK_DIR.mkdirs();
+        File temp = null;
+        try {
+            temp = File.createTempFile("tmp_pack_", null, Pack.PACK_DIR);
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] checksum;
+            try (OutputStream file = Files.newOutputStream(temp.toPath())) {
+                out = new CountingOutputStream(new DigestOutputStream(file, md));
+                writeInt(Pack.MAGIC);
+                writeInt(Pack.VERSION);
+                writeInt(commitIds.size() + trees.size() + countBlobs(versions));
+                for (String id : commitIds) {
+                    writeWhole(id, Pack.COMMIT, new ByteArrayInputStream(commitBytes(id)));
+                }
+                for (String id : trees) {
+                    try (InputStream in = ObjectStore.open(id)) {
+                        writeWhole(id, Pack.TREE, in);
+                    }
+                }
+                for (List<String> blobs : versions.values()) {
+                    writeVersions(blobs);
+                }
+                out.flush();
+                checksum = md.digest();
+                file.write(checksum);
+            }
+            finish(temp, checksum);
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+        Pack.reload();
+        /* Loose copies are only deleted once the pack is on disk. */
+        Durable.sync();
+        removePacked(oldPacks);
+    }
+
+    /* Return the IDs of the trees of all commits and their subtrees. A tree shared by several
+     * commits is only looked into once. */
+    private static Set<String> reachableTrees(List<Commit> commits) {
+        Set<String> trees = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        for (Commit commit : commits) {
+            pending.push(commit.getTree());
+            while (!pending.isEmpty()) {
+                String id = pending.pop();
+                if (trees.add(id)) {
+                    Tree.subtrees(id, pending);
+                }
+            }
+        }
+        return trees;
+    }
+
+    /* Map each path to the blobs tracked under it, newest first. A blob tracked under
+     * several paths is only listed under the path it was first seen at, and blobs stored in
+     * chunks are left out. */
+    private static Map<String, List<String>> versionsByPath(List<Commit> commits) {
+        List<Commit> newestFirst = new ArrayList<>(commits);
+        newestFirst.sort(Comparator.comparing(Commit::getCommitDate).reversed());
+        Map<String, List<String>> versions = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (Commit commit : newestFirst) {
+            for (Map.Entry<String, String> file : commit.getContentMapping().entrySet()) {
+                if (seen.add(file.getValue()) && !ObjectStore.isChunked(file.getValue())) {
+                    versions.computeIfAbsent(file.getKey(), k -> new ArrayList<>()).add(file.getValue());
+                }
+            }
+        }
+        return versions;
+    }
+
+    private static int countBlobs(Map<String, List<String>> versions) {
+        int count = 0;
+        for (List<String> blobs : versions.values()) {
+            count += blobs.size();
+        }
+        return count;
+    }
+
+    /* Write the versions of one path, newest first, each older one as a delta if that pays. */
+    private void writeVersions(List<String> blobs) throws IOException {
+        byte[] base = null;
+        String baseId = null;
+        int depth = 0;
+        for (String id : blobs) {
+            byte[] content = ObjectStore.readUpTo(id, deltaLimit);
+            if (content == null) {
+                try (InputStream in = ObjectStore.open(id)) {
+                    writeWhole(id, Pack.BLOB, in);
+                }
+                base = null;
+                continue;
+            }
+            if (base != null && depth < maxDepth) {
+                byte[] delta = Delta.create(base, content);
+                if (delta.length < content.length / 2) {
+                    writeDelta(id, baseId, delta);
+                    deltas += 1;
+                    depth += 1;
+                    base = content;
+                    baseId = id;
+                    continue;
+                }
+            }
+            writeWhole(id, Pack.BLOB, new ByteArrayInputStream(content));
+            base = content;
+            baseId = id;
+            depth = 0;
+        }
+    }
+
+    private void writeWhole(String id, int type, InputStream content) throws IOException {
+        offsets.put(id, out.count);
+        out.write(type);
+        deflate(content);
+    }
+
+    private void writeDelta(String id, String baseId, byte[] delta) throws IOException {
+        offsets.put(id, out.count);
+        out.write(Pack.DELTA);
+        out.write(Utils.fromHex(baseId));
+        deflate(new ByteArrayInputStream(delta));
+    }
+
+    private void deflate(InputStream content) throws IOException {
+        Deflater deflater = new Deflater(Config.getInt("core.compressionLevel",
+                Deflater.DEFAULT_COMPRESSION));
+        DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, Utils.IO_BUFFER_SIZE);
+        content.transferTo(compressed);
+        compressed.finish();
+        deflater.end();
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /* Move the pack into place and write its index, which makes the pack visible. */
+    private void finish(File temp, byte[] checksum) throws IOException {
+        String name = "pack-" + Utils.toHex(checksum);
+        File pack = join(Pack.PACK_DIR, name + ".pack");
+        Files.move(temp.toPath(), pack.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Durable.written(pack);
+        byte[][] ids = new byte[offsets.size()][];
+        long[] positions = new long[offsets.size()];
+        int k = 0;
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            ids[k] = Utils.fromHex(entry.getKey());
+            positions[k] = entry.getValue();
+            k += 1;
+        }
+        index = join(Pack.PACK_DIR, name + ".idx");
+        File indexTemp = join(Pack.PACK_DIR, name + ".idx.tmp");
+        Utils.writeContents(indexTemp, PackIndex.encode(ids, positions, checksum));
+        Files.move(indexTemp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Durable.written(index);
+    }
+
+    /* Delete loose copies of the packed objects, and the packs this one replaces. */
+    private void removePacked(List<Pack> oldPacks) {
+        for (String id : offsets.keySet()) {
+            join(COMMITS, id).delete();
+            File loose = ObjectStore.objectFile(id);
+            if (loose.delete()) {
+                /* Only succeeds once the fan-out directory is empty. */
+                loose.getParentFile().delete();
+            }
+            join(BLOBS, id).delete();
+        }
+        for (Pack pack : oldPacks) {
+            if (!pack.indexFile().equals(index)) {
+                pack.indexFile().delete();
+                pack.packFile().delete();
+            }
+        }
+        Pack.reload();
+    }
+
+    private static byte[] commitBytes(String id) {
+        byte[] packed = Pack.read(id);
+        return packed != null ? packed : Utils.readContents(join(COMMITS, id));
+    }
+
+    /** An output stream that counts the bytes written through it. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(new BufferedOutputStream(out, Utils.IO_BUFFER_SIZE));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/** Runs independent tasks, such as hashing many files, on a work-stealing pool.
+ *  The number of threads is given by the --jobs option before the command name, or else by
+ *  the core.jobs setting, and defaults to the number of processors.
+ *
+ *  Tasks must only write to state of their own (e.g. their slot of an array); results
+ *  are applied by the caller afterwards, in a fixed order, so that the output of a
+ *  command does not depend on how the tasks were scheduled.
+ *
+ *  @author Xingrong Chen
+ */
+class Parallel {
+
+    /* Number of threads given by the --jobs option, 0 if it was not given. */
+    private static int jobs;
+
+    /* Remove the "--jobs N" or "--jobs=N" option from the start of args, where it is given
+     * before the command name, and return the remaining arguments. An operand of the command
+     * is never taken for the option. */
+    static String[] parseJobs(String[] args) {
+        jobs = 0;
+        String value;
+        int length;
+        if (args.length > 0 && args[0].equals("--jobs")) {
+            value = args.length > 1 ? args[1] : "";
+            length = Math.min(2, args.length);
+        } else if (args.length > 0 && args[0].startsWith("--jobs=")) {
+            value = args[0].substring("--jobs=".length());
+            length = 1;
+        } else {
+            return args;
+        }
+        try {
+            jobs = Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            jobs = 0;
+        }
+        if (jobs < 1) {
+            System.out.println("Invalid number of jobs.");
+            Utils.exit(0);
+        }
+        return Arrays.copyOfRange(args, length, args.length);
+    }
+
+    /* Return the number of threads tasks are run on. */
+    static int jobs() {
+        if (jobs > 0) {
+            return jobs;
+        }
+        int configured = Config.getInt("core.jobs", Runtime.getRuntime().availableProcessors());
+        if (configured < 1) {
+            throw Utils.error("Invalid value for core.jobs: %d", configured);
+        }
+        return configured;
+    }
+
+    /* Run task for every index from 0 to count - 1 and wait until all have finished.
+     * The first exception thrown by a task is rethrown. */
+    static void forEach(int count, IntConsumer task) {
+        int threads = Math.min(jobs(), count);
+        if (threads <= 1) {
+            for (int i = 0; i < count; i += 1) {
+                task.accept(i);
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            /* A parallel stream started from a task of pool runs on pool rather than the common pool. */
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(task)).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
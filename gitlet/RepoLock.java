@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.join;
+
+/** Represents the lock a command holds on the repository while it runs, so that commands of
+ *  several gitlet processes sharing a repository never see each other's half-done changes.
+ *  Commands which only read the repository (log, status, ...) hold a shared lock and run at the
+ *  same time; commands which change it hold an exclusive lock and run alone.
+ *
+ *  The lock is an operating system lock (FileChannel.lock) on .gitlet/lock, so it is released
+ *  when its process dies, however it dies; the file itself is never deleted. A command waits up
+ *  to core.lockTimeout milliseconds for the lock before giving up.
+ *
+ *  @author Xingrong Chen
+ */
+class RepoLock {
+    public static final File LOCK = join(GITLET_DIR, "lock");
+
+    /* Delay between two attempts to take the lock, in milliseconds. */
+    private static final long RETRY_DELAY = 20;
+
+    private static FileChannel channel;
+    private static FileLock lock;
+
+    /* Take the lock of the repository, shared or exclusive, waiting for other processes to
+     * release it if needed. */
+    static void acquire(boolean shared) {
+        long timeout = Config.getInt("core.lockTimeout", 10000);
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            channel = FileChannel.open(LOCK.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            while (true) {
+                lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                if (lock != null) {
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    release();
+                    System.out.println("Another gitlet process is using the repository, gave up "
+                            + "waiting after " + timeout + " ms.");
+                    Utils.exit(1);
+                }
+                Thread.sleep(RETRY_DELAY);
+            }
+        } catch (IOException excp) {
+            release();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            release();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /* Return whether this process holds the exclusive lock, so that no other gitlet process is
+     * changing the repository. */
+    static boolean heldExclusive() {
+        return lock != null && lock.isValid() && !lock.isShared();
+    }
+
+    /* Release the lock, if it is held. */
+    static void release() {
+        try {
+            if (channel != null) {
+                /* Closing the channel releases its lock. */
+                channel.close();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            channel = null;
+            lock = null;
+        }
+    }
+}
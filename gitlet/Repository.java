@@ -1,18 +1,24 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Map;
 import java.util.List;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.ArrayList;
 import java.util.Iterator;
 
 import static gitlet.Commit.getCommitByID;
 import static gitlet.Utils.join;
-import static gitlet.Utils.plainFilenamesIn;
-import static gitlet.Utils.readObject;
 import static gitlet.Utils.readContentsAsString;
-import static gitlet.Utils.sha1;
+import static gitlet.Utils.writeContents;
 import static gitlet.Branch.BRANCH;
 
 /** Represents a gitlet repository.
@@ -27,13 +33,16 @@ public class Repository {
     public static final File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
-    /* The directory contains backup files. */
+    /* The directory contains uncompressed backup files written by older versions of gitlet,
+     * blobs are now kept in ObjectStore.OBJECTS. */
     public static final File BLOBS = join(GITLET_DIR, "blobs");
     /* The folder contains serialized commit object. */
     public static final File COMMITS = join(GITLET_DIR, "commits");
     /* The file which records branch name or sha1Id of commit object which the head pointer is on.*/
     public static final File HEAD = join(GITLET_DIR, "HEAD");
-    /* Serialized Staged object*/
+    /* The staging area and the stat data of tracked files, see Staged. */
+    public static final File INDEX = join(GITLET_DIR, "index");
+    /* The staging area written by older versions of gitlet, replaced by INDEX. */
     public static final File STAGED = join(GITLET_DIR, "STAGED");
 
     public static boolean isRepositoryDir() {
@@ -48,7 +57,7 @@ public class Repository {
         }
         /* Create all necessary working directories.*/
         GITLET_DIR.mkdir();
-        BLOBS.mkdir();
+        ObjectStore.OBJECTS.mkdir();
         COMMITS.mkdir();
         BRANCH.mkdir();
 
@@ -59,23 +68,36 @@ public class Repository {
 
     }
 
+    /* Stage the files named by the arguments. The files are hashed and their blobs written in
+     * parallel, see Parallel; once all are done the staging area is updated by this thread alone,
+     * in the order the files were named, so the outcome does not depend on which file finished first. */
     public static void add(String[] fileName) {
         Staged curStaged = Staged.getStaged();
         Commit previous = Branch.getHead();
         /* We distinguish temporary blob (blob of staged file) from permanent blob by file name,
          * if a blob is a temporary blob, then its name ends with '--'. */
         List<String> allFiles = getFiles(fileName);
-        for (String file : allFiles) {
-            String fileContent = Utils.readContentsAsString(join(CWD, file));
-            String contentId = Utils.sha1(fileContent);
+        Staged.Hashed[] hashed = new Staged.Hashed[allFiles.size()];
+        boolean[] unchanged = new boolean[allFiles.size()];
+        Parallel.forEach(allFiles.size(), i -> {
+            String file = allFiles.get(i);
+            hashed[i] = curStaged.hash(file);
             /* If the file user want to stage for addition has the same content
              *  as its version in the latest commit, we remove the file from staging area.*/
-            if (previous.tracked(file, contentId)) {
+            unchanged[i] = previous.tracked(file, hashed[i].id);
+            if (!unchanged[i]) {
+                Large.put(file, hashed[i].id, join(CWD, file));
+            }
+        });
+        for (int i = 0; i < hashed.length; i += 1) {
+            String file = allFiles.get(i);
+            curStaged.record(hashed[i]);
+            if (unchanged[i]) {
                 /* This could be the case where the file has been staged for removal then add it back,
                  *  or has been modified and staged then change it back to its original version. */
                 curStaged.unStaged(file);
             } else {
-                curStaged.stageFileForAddition(file, fileContent, contentId + "--");
+                curStaged.stageFileForAddition(file, join(CWD, file), hashed[i].id + "--");
             }
         }
         /* Update content of STAGE*/
@@ -83,15 +105,22 @@ public class Repository {
     }
 
     public static void commit(String msg) {
-        if (!STAGED.exists() || Utils.readObject(STAGED, Staged.class).isEmpty()) {
+        commit(msg, null);
+    }
+
+    /* Commit the staged changes, the commit records secondParent if it is a merge. */
+    private static void commit(String msg, String secondParent) {
+        if (Staged.getStaged().isEmpty()) {
             System.out.println("No changes added to the commit.");
-            System.exit(1);
+            Utils.exit(1);
         }
         Commit newCommit = new Commit(msg, Branch.getHeadId());
+        newCommit.setSecondParent(secondParent);
         Staged staged = Staged.getStaged();
         newCommit.updateContentForCommit(staged);
-        staged.cleanStageArea();
+        /* The staging area is only emptied once the commit is stored. */
         Branch.storeHead(newCommit);
+        staged.cleanStageArea();
     }
 
     public static void rm(String fileName) {
@@ -107,39 +136,42 @@ public class Repository {
             /* If the file was tracked by current commit, stage if for removal and remove it from CWD. */
             curStaged.stageForRemove(fileName);
             if (join(CWD, fileName).exists()) {
-                join(CWD, fileName).delete();
+                deleteWorkingFile(fileName);
             }
         }
         curStaged.updateStageFile();
     }
 
-    public static void printLog() {
-        String nodeID = Branch.getHeadId();
-        Commit node = getCommitByID(nodeID);
-        while (node != null) {
-            node.displayCommitNode(nodeID);
-            nodeID = node.getParent();
-            node = getCommitByID(nodeID);
-        }
+    /* Display the history of the head commit, or of the commit given by args, see LogPrinter. */
+    public static void printLog(String[] args) {
+        LogPrinter.parse(args).print();
     }
 
+    /* Display every commit, in the order of their IDs. Only the commit metadata log is read. */
     public static void globalLog() {
-        List<String> allCommit = plainFilenamesIn(COMMITS);
-        assert allCommit != null;
-        for (String commit : allCommit) {
-            Commit cur = readObject(join(COMMITS, commit), Commit.class);
-            cur.displayCommitNode(commit);
+        List<CommitMeta.Record> records = CommitMeta.all();
+        records.sort(Comparator.comparing(record -> record.id));
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, Utils.IO_BUFFER_SIZE));
+        for (CommitMeta.Record record : records) {
+            Commit.display(out, record.id, record.parent, record.secondParent, new Date(record.time),
+                    record.message);
         }
+        out.flush();
     }
 
-    public static void findWithMsg(String msg) {
-        List<String> allCommit = plainFilenamesIn(COMMITS);
-        assert allCommit != null;
-        for (String commit : allCommit) {
-            Commit cur = readObject(join(COMMITS, commit), Commit.class);
-            if (cur.getMessage().equals(msg)) {
-                System.out.println(commit);
-            }
+    /* Print the IDs of the commits whose message is msg, or with mode "--words" contains all
+     * words of msg, or with mode "--substring" contains msg. */
+    public static void findWithMsg(String mode, String msg) {
+        List<String> found;
+        if (mode == null) {
+            found = CommitMeta.findExact(msg);
+        } else if (mode.equals("--words")) {
+            found = CommitMeta.findWords(msg);
+        } else {
+            found = CommitMeta.findSubstring(msg);
+        }
+        for (String commit : found) {
+            System.out.println(commit);
         }
     }
 
@@ -168,19 +200,20 @@ public class Repository {
     }
 
     public static void checkoutFileInCommit(String fileName, String commitId) {
-        getCommitByID(commitId).checkoutFile(fileName);
+        getCommitByID(Commit.resolveID(commitId)).checkoutFile(fileName);
     }
 
     public static void checkOutBranch(String branchName) {
         if (readContentsAsString(HEAD).equals(branchName)) {
             System.out.println("No need to checkout the current branch.");
-            System.exit(1);
+            Utils.exit(1);
         }
         Commit head = Branch.getHead(branchName);
         Commit curHead = Branch.getHead();
-        head.checkout(curHead);
+        Staged staged = Staged.getStaged();
+        head.checkout(curHead, staged);
         Branch.switchTo(branchName);
-        Staged.getStaged().cleanStageArea();
+        staged.cleanStageArea();
     }
 
     public static void branch(String branchName) {
@@ -192,10 +225,12 @@ public class Repository {
     }
 
     public static void reset(String commitId) {
+        commitId = Commit.resolveID(commitId);
         Commit head = getCommitByID(commitId);
-        head.checkout(Branch.getHead());
+        Staged staged = Staged.getStaged();
+        head.checkout(Branch.getHead(), staged);
         Branch.updateHead(commitId);
-        Staged.getStaged().cleanStageArea();
+        staged.cleanStageArea();
     }
 
     public static void merge(String branchName) {
@@ -225,11 +260,13 @@ public class Repository {
             while (givenFile != null || thisFile != null) {
                 if (thisFile == null || (givenFile != null && givenFile.getKey().compareTo(thisFile.getKey()) < 0)) {
                     String[] val = givenFile.getValue().split(",");
+                    File target = join(CWD, givenFile.getKey());
                     if (val[1].equals("deleted")) {
                         curStage.stageForRemove(givenFile.getKey());
+                        deleteWorkingFile(givenFile.getKey());
                     } else {
-                        String content = readContentsAsString(join(BLOBS, val[0]));
-                        curStage.stageFileForAddition(givenFile.getKey(), content, val[0] + "--");
+                        ObjectStore.copyTo(val[0], target);
+                        curStage.stageFileForAddition(givenFile.getKey(), target, val[0] + "--");
                     }
                     givenFile = givenIter.hasNext() ? givenIter.next() : null;
                 } else if (givenFile == null || givenFile.getKey().compareTo(thisFile.getKey()) > 0) {
@@ -238,13 +275,14 @@ public class Repository {
                     String[] givenVal = givenFile.getValue().split(",");
                     String[] thisVal = thisFile.getValue().split(",");
                     if (!givenVal[1].equals(thisVal[1]) || !givenVal[0].equals(thisVal[0])) {
-                        System.out.println("Encountered a merge conflict.");
-                        String content = "<<<<<<< HEAD\n" +
-                                (thisVal[1].equals("deleted") ? "" : readContentsAsString(join(BLOBS, thisVal[0]))) +
-                                "=======\n" +
-                                (givenVal[1].equals("deleted") ? "" : readContentsAsString(join(BLOBS, givenVal[0]))) +
-                                ">>>>>>>\n";
-                        curStage.stageFileForAddition(thisFile.getKey(), content, sha1(content) + "--");
+                        File target = join(CWD, thisFile.getKey());
+                        target.getParentFile().mkdirs();
+                        if (mergeFile(target, splitCommit.blobID(thisFile.getKey()), thisVal, givenVal)) {
+                            System.out.println("Encountered a merge conflict.");
+                        }
+                        /* Hashed as add would, so that a large file is staged as its pointer. */
+                        String mergedID = curStage.contentID(thisFile.getKey());
+                        curStage.stageFileForAddition(thisFile.getKey(), target, mergedID + "--");
                     }
                     givenFile = givenIter.hasNext() ? givenIter.next() : null;
                     thisFile = thisIter.hasNext() ? thisIter.next() : null;
@@ -252,32 +290,134 @@ public class Repository {
             }
         }
         curStage.updateStageFile();
-        commit(String.format("Merged %S into %s.", branchName, readContentsAsString(HEAD)));
-        Branch.getHead().setSecondParent(givenBranchId);
+        commit(String.format("Merged %S into %s.", branchName, readContentsAsString(HEAD)), givenBranchId);
+    }
+
+    /* Write the merge of the versions of a file changed in both branches to target, and return
+     * whether they conflict. Versions deleted in either branch, pointers to large files (see
+     * Large), binary versions and versions longer than merge.maxLineMergeSize bytes conflict
+     * as a whole, text versions are merged line by line with their version at the split point,
+     * baseID, which is null if the file was added in both branches. thisVal and givenVal are the changes of both branches, as returned
+     * by Commit.compareDiff. */
+    private static boolean mergeFile(File target, String baseID, String[] thisVal, String[] givenVal) {
+        boolean thisDeleted = thisVal[1].equals("deleted");
+        boolean givenDeleted = givenVal[1].equals("deleted");
+        boolean whole = thisDeleted || givenDeleted
+                || Large.isPointer(thisVal[0]) || Large.isPointer(givenVal[0]);
+        int limit = Config.getInt("merge.maxLineMergeSize", 64 << 20);
+        try {
+            byte[] base = null;
+            byte[] ours = null;
+            byte[] theirs = null;
+            if (!whole) {
+                /* Each version is read up to the limit, and given up on once it is longer. */
+                base = baseID == null ? new byte[0] : ObjectStore.readUpTo(baseID, limit);
+                ours = base == null ? null : ObjectStore.readUpTo(thisVal[0], limit);
+                theirs = ours == null ? null : ObjectStore.readUpTo(givenVal[0], limit);
+            }
+            if (theirs == null) {
+                try (InputStream thisContent = thisDeleted
+                        ? InputStream.nullInputStream() : ObjectStore.open(thisVal[0]);
+                     InputStream givenContent = givenDeleted
+                        ? InputStream.nullInputStream() : ObjectStore.open(givenVal[0])) {
+                    /* Both versions are streamed into the working file, never held in memory. */
+                    writeContents(target, "<<<<<<< HEAD\n", thisContent,
+                            "=======\n", givenContent, ">>>>>>>\n");
+                }
+                return true;
+            }
+            Diff.Lines[] lines = Diff.split(base, ours, theirs);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target), Utils.IO_BUFFER_SIZE)) {
+                if (lines[0].isBinary() || lines[1].isBinary() || lines[2].isBinary()) {
+                    out.write("<<<<<<< HEAD\n".getBytes());
+                    lines[1].write(out, 0, lines[1].size());
+                    out.write("=======\n".getBytes());
+                    lines[2].write(out, 0, lines[2].size());
+                    out.write(">>>>>>>\n".getBytes());
+                    return true;
+                }
+                return LineMerge.merge(lines[0], lines[1], lines[2], out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    public static void repack() {
+        PackWriter.repack();
+    }
+
+    public static void gc(boolean now) {
+        GarbageCollector.gc(now);
     }
 
+    public static void fsck() {
+        Fsck.fsck();
+    }
+
+    /* Return the paths of the files named by the arguments, relative to CWD. A directory
+     * names every file under it. */
     private static List<String> getFiles(String[] fileName) {
         List<String> allFiles = new ArrayList<>();
         for (int i = 1; i < fileName.length; i += 1) {
+            String path = null;
             try {
-                join(CWD, fileName[i]);
+                path = CWD.toPath().relativize(join(CWD, fileName[i]).toPath().normalize())
+                        .toString().replace(File.separatorChar, '/');
             } catch (Exception e) {
                 System.out.println("File does not exist.");
-                System.exit(1);
+                Utils.exit(1);
             }
-            File cur = join(CWD, fileName[i]);
-            if (!cur.exists()) {
+            File cur = join(CWD, path);
+            if (!cur.exists() || path.startsWith("..")) {
                 System.out.println("File does not exist.");
-                System.exit(1);
+                Utils.exit(1);
             }
             if (cur.isFile()) {
-                allFiles.add(fileName[i]);
+                allFiles.add(path);
             } else {
-                List<String> files = plainFilenamesIn(cur);
-                assert files != null;
-                allFiles.addAll(files);
+                listFiles(cur, path.isEmpty() ? "" : path + "/", allFiles);
             }
         }
         return allFiles;
     }
+
+    /* Return the paths of all files in the working directory, relative to CWD and in order. */
+    @SuppressWarnings("try")
+    public static List<String> workingFiles() {
+        List<String> files = new ArrayList<>();
+        try (Trace.Span span = Trace.start(Trace.SCAN)) {
+            listFiles(CWD, "", files);
+            Collections.sort(files);
+        }
+        return files;
+    }
+
+    /* Add the path of every file under dir to files, each prefixed with prefix.
+     * The repository directory is skipped. */
+    private static void listFiles(File dir, String prefix, List<String> files) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (entry.isFile()) {
+                files.add(prefix + entry.getName());
+            } else if (entry.isDirectory() && !entry.equals(GITLET_DIR)) {
+                listFiles(entry, prefix + entry.getName() + "/", files);
+            }
+        }
+    }
+
+    /* Delete the file at given path in CWD, and the directories it leaves empty. */
+    public static void deleteWorkingFile(String path) {
+        File file = join(CWD, path);
+        file.delete();
+        for (File dir = file.getParentFile(); !dir.equals(CWD); dir = dir.getParentFile()) {
+            /* Only succeeds once the directory is empty. */
+            if (!dir.delete()) {
+                break;
+            }
+        }
+    }
 }
@@ -9,47 +9,94 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import static gitlet.Repository.BLOBS;
+import static gitlet.Repository.INDEX;
 import static gitlet.Repository.STAGED;
 import static gitlet.Repository.CWD;
+import static gitlet.Utils.deserialize;
 import static gitlet.Utils.join;
-import static gitlet.Utils.plainFilenamesIn;
-import static gitlet.Utils.readContentsAsString;
-import static gitlet.Utils.readObject;
-import static gitlet.Utils.sha1;
-import static gitlet.Utils.writeContents;
+import static gitlet.Utils.readContents;
 
 /** Represents a gitlet Staged object, which contains the files were staged for addition,
  *  or staged for removal, assists to create a new commit object based on staged files,
  *  and identify untracked files and unknown modification of files in CWD
  *
+ *  The staging area is stored in .gitlet/index together with the stat data of tracked files,
+ *  so that status only hashes the files whose modification time, size or inode changed.
+ *  The index is magic "GI", a version byte, the sorted stage entries, each a file name
+ *  followed by a removal marker or the blob it was staged with, and the sorted stat entries,
+ *  each a file name, its mtime, size and inode, and the blob it had when it was hashed.
+ *  A staging area in .gitlet/STAGED, written by an older version either as magic "GS" and
+ *  the stage entries or with java serialization, is still read, and is moved into the index
+ *  the next time it changes.
+ *
  *  @author Xingrong Chen
  */
 public class Staged implements Serializable {
 
+    /* Fixed so that staging areas written by earlier versions of this class stay readable. */
+    private static final long serialVersionUID = 478407144746742630L;
+
+    private static final String MAGIC = "GI";
+    private static final int VERSION = 1;
+    private static final String LEGACY_MAGIC = "GS";
+    /* Entry markers. */
+    private static final int REMOVAL = 0;
+    private static final int ADDITION = 1;
+
     /* map the file name to its reference to blob (sha1ID of file content) or a string,
     * if the value is a reference, then this file was staged for addition
     * if the value is "remove", then this file was staged for removal. */
     private final Map<String, String> stageMap = new TreeMap<>();
 
+    /* Map the file name of a tracked file to its stat data and blob when it was last hashed. */
+    private final transient Map<String, StatEntry> statCache = new TreeMap<>();
+    /* Modification time of the index when it was read, see contentID. */
+    private transient long indexTime;
+    /* Whether statCache changed since the index was read. */
+    private transient boolean statChanged;
+
+    /** Stat data of a file together with the blob ID of its content. */
+    private static class StatEntry {
+        private final FileStat stat;
+        private final String id;
+
+        StatEntry(FileStat stat, String id) {
+            this.stat = stat;
+            this.id = id;
+        }
+    }
+
     public boolean isEmpty() {
         return stageMap.isEmpty();
     }
 
     public List<String> getStagedFiles() { return new ArrayList<>(stageMap.keySet()); }
 
-    /* When this file is ready to be committed, rename the corresponding blob file (remove the last two '-'),
-    *  then remove this file from stage map. */
+    /* Return the blob IDs of the files staged for addition. */
+    public List<String> getStagedBlobs() {
+        List<String> blobs = new ArrayList<>();
+        for (String blobID : stageMap.values()) {
+            if (!blobID.equals("remove")) {
+                blobs.add(blobID.substring(0, blobID.length() - 2));
+            }
+        }
+        return blobs;
+    }
+
+    /* When this file is ready to be committed, remove the last two '-' of its blob reference,
+    *  then remove this file from stage map. The blob itself is already in the object store. */
     public String clearStageSymbol(String fileName) {
         String curID = stageMap.get(fileName);
-        String returnID = curID.substring(0, curID.length() - 2);
         if (curID.equals("remove")) {
             return "remove";
         }
+        String returnID = curID.substring(0, curID.length() - 2);
         stageMap.remove(fileName);
-        File blobName = join(BLOBS, curID);
-        boolean succeed = blobName.renameTo(join(BLOBS, returnID));
-        if (!succeed) {
-            blobName.delete();
+        /* Temporary blob staged by an older version of gitlet. */
+        File legacyBlob = join(BLOBS, curID);
+        if (legacyBlob.exists()) {
+            ObjectStore.put(returnID, legacyBlob);
+            legacyBlob.delete();
         }
         return returnID;
     }
@@ -62,7 +109,8 @@ public class Staged implements Serializable {
         stageMap.put(fileName, "remove");
     }
 
-    /* Remove file from stage map and delete the corresponding stage blob. */
+    /* Remove file from stage map. The staged blob stays in the object store since commits may
+     * share it, only a temporary blob left by an older version of gitlet is deleted. */
     public void unStaged(String fileName) {
         if (!stageMap.containsKey(fileName)) {
             return;
@@ -74,37 +122,166 @@ public class Staged implements Serializable {
         stageMap.remove(fileName);
     }
 
-    /* Replace serialized Staged object in .getlet/ with this Staged object.*/
+    /* Write this staging area and the stat data of tracked files to the index. */
     public void updateStageFile() {
-        if (stageMap.isEmpty()) {
-            STAGED.delete();
-        } else {
-            Utils.writeObject(STAGED, this);
-        }
+        Durable.write(INDEX, encode());
+        STAGED.delete();
     }
-    /* Read Staged object from STAGED file*/
+    /* Read the staging area from the index, or from the STAGED file of an older version. */
+    @SuppressWarnings("try")
     public static Staged getStaged() {
-        if (!STAGED.exists()) {
+        try (Trace.Span span = Trace.start(Trace.READ)) {
+            FileStat stat = FileStat.of(INDEX);
+            if (stat != null) {
+                Staged staged = decode(readContents(INDEX));
+                staged.indexTime = stat.mtime;
+                return staged;
+            }
+            if (STAGED.exists()) {
+                return decodeLegacy(readContents(STAGED));
+            }
             return new Staged();
         }
-        return readObject(STAGED, Staged.class);
     }
-    /* Stage a file for addition*/
-    public void stageFileForAddition(String fileName, String fileContent, String blobID) {
+
+    /** The blob ID of a file in CWD, with the stat data of the file when it was hashed. */
+    static class Hashed {
+        final String fileName;
+        final FileStat stat;
+        final String id;
+        /* Whether id was taken from the stat data, the file was not read. */
+        final boolean cached;
+
+        Hashed(String fileName, FileStat stat, String id, boolean cached) {
+            this.fileName = fileName;
+            this.stat = stat;
+            this.id = id;
+            this.cached = cached;
+        }
+    }
+
+    /* Return the blob ID of the given file in CWD. The file is only hashed again if its stat data
+     * changed since it was last hashed. A file modified within the same timestamp tick as the index
+     * was written may have been changed after it was hashed without its stat data changing,
+     * so a file whose mtime is not older than the index is always hashed again. */
+    public String contentID(String fileName) {
+        Hashed hashed = hash(fileName);
+        record(hashed);
+        return hashed.id;
+    }
+
+    /* Return the blob ID of the given file in CWD like contentID, without recording its stat data;
+     * the ID is null if the file does not exist. This only reads the staging area, so several
+     * threads may call it at once. */
+    @SuppressWarnings("try")
+    Hashed hash(String fileName) {
+        File file = join(CWD, fileName);
+        /* Stat before hashing, so that a change made while hashing is seen next time. */
+        FileStat stat;
+        try (Trace.Span span = Trace.start(Trace.SCAN)) {
+            stat = FileStat.of(file);
+        }
+        StatEntry cached = statCache.get(fileName);
+        if (cached != null && cached.stat.equals(stat) && stat.mtime < indexTime) {
+            return new Hashed(fileName, stat, cached.id, true);
+        }
+        return new Hashed(fileName, stat, stat == null ? null : Large.blobId(fileName, file, stat.size), false);
+    }
+
+    /* Record the stat data of a file returned by hash, to be saved with the index. */
+    void record(Hashed hashed) {
+        if (!hashed.cached && hashed.stat != null) {
+            statCache.put(hashed.fileName, new StatEntry(hashed.stat, hashed.id));
+            statChanged = true;
+        }
+    }
+
+    private byte[] encode() {
+        BinaryFormat.Writer out = new BinaryFormat.Writer(MAGIC, VERSION);
+        writeStageEntries(out);
+        out.writeVarint(statCache.size());
+        for (Map.Entry<String, StatEntry> file : statCache.entrySet()) {
+            FileStat stat = file.getValue().stat;
+            out.writeString(file.getKey());
+            out.writeLong(stat.mtime).writeLong(stat.size).writeLong(stat.inode);
+            out.writeId(file.getValue().id);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeStageEntries(BinaryFormat.Writer out) {
+        out.writeVarint(stageMap.size());
+        for (Map.Entry<String, String> file : stageMap.entrySet()) {
+            out.writeString(file.getKey());
+            if (file.getValue().equals("remove")) {
+                out.writeByte(REMOVAL);
+            } else {
+                out.writeByte(ADDITION);
+                out.writeId(file.getValue().substring(0, file.getValue().length() - 2));
+            }
+        }
+    }
+
+    private static Staged decode(byte[] data) {
+        BinaryFormat.Reader in = new BinaryFormat.Reader(data, MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported index version %d.", in.version());
+        }
+        Staged staged = new Staged();
+        staged.readStageEntries(in);
+        int entries = in.readCount();
+        for (int i = 0; i < entries; i += 1) {
+            String file = in.readString();
+            FileStat stat = new FileStat(in.readLong(), in.readLong(), in.readLong());
+            staged.statCache.put(file, new StatEntry(stat, in.readId()));
+        }
+        return staged;
+    }
+
+    /* Read a staging area written by an older version of gitlet. */
+    private static Staged decodeLegacy(byte[] data) {
+        Staged staged = new Staged();
+        if (BinaryFormat.isJavaSerialized(data)) {
+            staged.stageMap.putAll(deserialize(data, Staged.class).stageMap);
+            return staged;
+        }
+        BinaryFormat.Reader in = new BinaryFormat.Reader(data, LEGACY_MAGIC);
+        if (in.version() != VERSION) {
+            throw Utils.error("Unsupported staging area version %d.", in.version());
+        }
+        staged.readStageEntries(in);
+        return staged;
+    }
+
+    private void readStageEntries(BinaryFormat.Reader in) {
+        int entries = in.readCount();
+        for (int i = 0; i < entries; i += 1) {
+            String file = in.readString();
+            if (in.readByte() == REMOVAL) {
+                stageMap.put(file, "remove");
+            } else {
+                stageMap.put(file, in.readId() + "--");
+            }
+        }
+    }
+    /* Stage a file for addition, the content of source is streamed into the object store. */
+    public void stageFileForAddition(String fileName, File source, String blobID) {
         if (stageMap.containsKey(fileName)) {
             if (stageMap.get(fileName).equals(blobID)) return;
             unStaged(fileName);
         }
         stageMap.put(fileName, blobID);
-        writeContents(join(BLOBS, blobID), fileContent);
+        Large.put(fileName, blobID.substring(0, blobID.length() - 2), source);
     }
-    /* Delete all cache file (temporary blob) and delete the serialized Staged object.*/
+    /* Delete temporary blobs left by older versions of gitlet and empty the staging area,
+     * the stat data of tracked files is kept. */
     public void cleanStageArea() {
         for (String file : stageMap.keySet()) {
             String blobId = stageMap.get(file);
             join(BLOBS, blobId).delete();
         }
-        STAGED.delete();
+        stageMap.clear();
+        updateStageFile();
     }
     /* Print the status of staged files.*/
     public void printStageStatus() {
@@ -126,8 +303,7 @@ public class Staged implements Serializable {
     }
     /* Find out any untracked files and unknown modification in CWD.*/
     public void reviewChange(List<String> unknownModification, List<String> unTracked) {
-        List<String> allFiles = plainFilenamesIn(CWD);
-        assert allFiles != null;
+        List<String> allFiles = Repository.workingFiles();
         Commit head = Branch.getHead();
         Map<String, String> storedFiles = new TreeMap<>(head.getContentMapping());
         /* Update the reference if the file was changed and was staged for addition. */
@@ -156,8 +332,7 @@ public class Staged implements Serializable {
                 if (storedFiles.get(fileInCwd).equals("remove")) {
                     unTracked.add(fileInCwd);
                 } else {
-                    String cwdContent = readContentsAsString(join(CWD, fileInCwd));
-                    String contentID = sha1(cwdContent);
+                    String contentID = contentID(fileInCwd);
                     String trackedID = storedFiles.get(fileInCwd);
                 /* Tracked in the current commit, changed in the working directory, but not staged;
                    Staged for addition, but with different contents than in the working directory; */
@@ -170,5 +345,12 @@ public class Staged implements Serializable {
                 fileInCwd = ptr < allFiles.size() ? allFiles.get(ptr) : null;
             }
         }
+        /* Forget files which are no longer tracked, and save the stat data of rehashed files.
+         * Only a command holding the exclusive lock writes the index: status holds a shared one,
+         * and other readers may run at the same time (see RepoLock). */
+        boolean forgotten = statCache.keySet().retainAll(storedFiles.keySet());
+        if ((forgotten || statChanged) && RepoLock.heldExclusive()) {
+            updateStageFile();
+        }
     }
 }
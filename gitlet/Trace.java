@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Measures where the time of a command goes. With the --trace option before the command name,
+ *  or with the environment variable GITLET_TRACE set, the time spent in each phase of the
+ *  command (resolving refs, reading objects, hashing, scanning the working directory and
+ *  writing) and the numbers of objects read and written and of bytes hashed are printed to
+ *  standard error when it ends.
+ *
+ *  Code of a phase runs in a Span, opened with start and closed by try-with-resources, whose
+ *  methods suppress the "try" lint warning about the unreferenced span. Spans nest, and the
+ *  time of an inner span is not counted in the outer one, so the phases add up to the time of
+ *  the spans. Times are summed over all threads (see Parallel), so they may add up
+ *  to more than the time of the command.
+ *
+ *  Every span and every command is also a JDK Flight Recorder event, gitlet.Phase and
+ *  gitlet.Command, whenever a recording is running (e.g. java -XX:StartFlightRecording), with or
+ *  without --trace. Without either, a span costs two checks and allocates nothing.
+ *
+ *  @author Xingrong Chen
+ */
+class Trace {
+    /* Phases of a command. */
+    static final int REFS = 0;
+    static final int READ = 1;
+    static final int HASH = 2;
+    static final int SCAN = 3;
+    static final int WRITE = 4;
+    private static final String[] PHASES = {"refs", "read", "hash", "scan", "write"};
+
+    /* The span of no phase, returned while neither tracing nor recording. */
+    private static final Span NONE = new Span(-1, null, null, 0);
+
+    private static volatile boolean enabled;
+    private static String command;
+    private static long started;
+    private static CommandEvent commandEvent;
+    private static final LongAdder[] nanos = new LongAdder[PHASES.length];
+    private static final LongAdder[] spans = new LongAdder[PHASES.length];
+    private static final LongAdder objectsRead = new LongAdder();
+    private static final LongAdder objectsWritten = new LongAdder();
+    private static final LongAdder bytesHashed = new LongAdder();
+    /* The innermost open span of each thread. */
+    private static final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    static {
+        for (int i = 0; i < PHASES.length; i += 1) {
+            nanos[i] = new LongAdder();
+            spans[i] = new LongAdder();
+        }
+    }
+
+    /** Represents the running of code of one phase, until it is closed. */
+    static class Span implements AutoCloseable {
+        private final int phase;
+        private final Span outer;
+        private final PhaseEvent event;
+        /* When this span last started or resumed running, after its inner spans closed. */
+        private long resumed;
+
+        private Span(int phase, Span outer, PhaseEvent event, long resumed) {
+            this.phase = phase;
+            this.outer = outer;
+            this.event = event;
+            this.resumed = resumed;
+        }
+
+        @Override
+        public void close() {
+            if (this == NONE) {
+                return;
+            }
+            long now = System.nanoTime();
+            nanos[phase].add(now - resumed);
+            spans[phase].increment();
+            current.set(outer);
+            if (outer != null) {
+                outer.resumed = now;
+            }
+            event.commit();
+        }
+    }
+
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @Description("Code of one phase of a gitlet command")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    @Description("A gitlet command, from its arguments to its exit status")
+    static class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+        @Label("Exit Status")
+        int status;
+        @Label("Objects Read")
+        long objectsRead;
+        @Label("Objects Written")
+        long objectsWritten;
+        @Label("Bytes Hashed")
+        @DataAmount
+        long bytesHashed;
+    }
+
+    /* Start measuring the command given by args: remove the --trace option from the options
+     * before the command name, among which --jobs and its value are kept (see Parallel), and
+     * return the remaining arguments. An operand of the command is never taken for it. */
+    static String[] parse(String[] args) {
+        List<String> rest = new ArrayList<>();
+        enabled = false;
+        int i = 0;
+        while (i < args.length) {
+            if (args[i].equals("--trace")) {
+                enabled = true;
+            } else if (args[i].equals("--jobs") && i + 1 < args.length) {
+                rest.add(args[i]);
+                i += 1;
+                rest.add(args[i]);
+            } else if (args[i].equals("--jobs") || args[i].startsWith("--jobs=")) {
+                rest.add(args[i]);
+            } else {
+                break;
+            }
+            i += 1;
+        }
+        rest.addAll(Arrays.asList(args).subList(i, args.length));
+        for (int phase = 0; phase < PHASES.length; phase += 1) {
+            nanos[phase].reset();
+            spans[phase].reset();
+        }
+        objectsRead.reset();
+        objectsWritten.reset();
+        bytesHashed.reset();
+        command = rest.isEmpty() ? "" : rest.get(0);
+        started = System.nanoTime();
+        commandEvent = new CommandEvent();
+        commandEvent.begin();
+        return rest.size() == args.length ? args : rest.toArray(new String[0]);
+    }
+
+    /* Return an open span of the given phase. */
+    static Span start(int phase) {
+        if (!enabled && !FlightRecorder.isInitialized()) {
+            /* No recording was ever started, so no event is created either. */
+            return NONE;
+        }
+        PhaseEvent event = new PhaseEvent();
+        if (!enabled && !event.isEnabled()) {
+            return NONE;
+        }
+        event.phase = PHASES[phase];
+        event.begin();
+        long now = System.nanoTime();
+        Span outer = current.get();
+        if (outer != null) {
+            /* Paused until the new span is closed. */
+            nanos[outer.phase].add(now - outer.resumed);
+        }
+        Span span = new Span(phase, outer, event, now);
+        current.set(span);
+        return span;
+    }
+
+    static void objectRead() {
+        objectsRead.increment();
+    }
+
+    static void objectWritten() {
+        objectsWritten.increment();
+    }
+
+    static void hashed(long bytes) {
+        bytesHashed.add(bytes);
+    }
+
+    /* End measuring the command, which exits with the given status, and print what was
+     * measured if tracing. */
+    static void finish(int status) {
+        if (commandEvent != null) {
+            commandEvent.end();
+        }
+        if (commandEvent != null && commandEvent.shouldCommit()) {
+            commandEvent.command = command;
+            commandEvent.status = status;
+            commandEvent.objectsRead = objectsRead.sum();
+            commandEvent.objectsWritten = objectsWritten.sum();
+            commandEvent.bytesHashed = bytesHashed.sum();
+            commandEvent.commit();
+        }
+        commandEvent = null;
+        if (!enabled) {
+            return;
+        }
+        enabled = false;
+        System.err.printf("trace: %s took %.3f ms, exit status %d%n", command,
+                (System.nanoTime() - started) / 1e6, status);
+        for (int i = 0; i < PHASES.length; i += 1) {
+            System.err.printf("trace:   %-6s %10.3f ms %8d spans%n", PHASES[i], nanos[i].sum() / 1e6,
+                    spans[i].sum());
+        }
+        System.err.printf("trace: %d objects read, %d objects written, %d bytes hashed%n",
+                objectsRead.sum(), objectsWritten.sum(), bytesHashed.sum());
+        System.err.println("trace: " + Commit.cacheStats());
+    }
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Represents a tree object, the snapshot of one directory: each entry maps the name of a
+ *  file to its blob, or the name of a subdirectory to its tree. A tree is identified by the
+ *  SHA-1 hash of its contents, so a directory which did not change between two commits
+ *  is the same tree object in both, and is neither written again nor looked into when
+ *  the commits are compared.
+ *
+ *  A tree is stored in the object store as magic "GT", a version byte and the entries
+ *  sorted by name, each a name, a type byte and the 20-byte id of the blob or tree.
+ *  Paths of tracked files are relative to the working directory and separated by '/'.
+ *
+ *  @author Xingrong Chen
+ */
+class Tree {
+    private static final String MAGIC = "GT";
+    private static final int VERSION = 1;
+
+    /* Entry types. */
+    private static final int BLOB = 0;
+    private static final int TREE = 1;
+
+    /* Map the name of each entry to its type and id. */
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private static class Entry {
+        private final int type;
+        private final String id;
+
+        Entry(int type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+    /* Return the ID of the tree which stores the given (path, blob) mapping. */
+    static String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /* Return the ID of the tree obtained from the tree with given ID (null for the empty tree)
+     * by applying changes, which map a path to its new blob, or to null if it was removed.
+     * Only the trees along changed paths are written again, the others are shared. */
+    static String update(String treeID, Map<String, String> changes) {
+        String id = updateTree(treeID, changes);
+        return id != null ? id : new Tree().store();
+    }
+
+    /* Return the ID of the updated tree, or null if it has no entries left. */
+    private static String updateTree(String treeID, Map<String, String> changes) {
+        Tree tree = treeID == null ? new Tree() : read(treeID);
+        Map<String, Map<String, String>> subChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                subChanges.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                Entry removed = tree.entries.get(path);
+                if (removed != null && removed.type == BLOB) {
+                    tree.entries.remove(path);
+                }
+            } else {
+                tree.entries.put(path, new Entry(BLOB, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> dir : subChanges.entrySet()) {
+            Entry old = tree.entries.get(dir.getKey());
+            String subtree = updateTree(old != null && old.type == TREE ? old.id : null, dir.getValue());
+            if (subtree != null) {
+                tree.entries.put(dir.getKey(), new Entry(TREE, subtree));
+            } else if (old != null && old.type == TREE) {
+                tree.entries.remove(dir.getKey());
+            }
+        }
+        return tree.entries.isEmpty() ? null : tree.store();
+    }
+
+    /* Return the blob of the file at given path in the tree with given ID, or null. */
+    static String find(String treeID, String path) {
+        Tree tree = read(treeID);
+        int slash = path.indexOf('/');
+        Entry entry = tree.entries.get(slash < 0 ? path : path.substring(0, slash));
+        if (entry == null) {
+            return null;
+        } else if (slash < 0) {
+            return entry.type == BLOB ? entry.id : null;
+        }
+        return entry.type == TREE ? find(entry.id, path.substring(slash + 1)) : null;
+    }
+
+    /* Add the (path, blob) mapping of every file in the tree with given ID to files,
+     * each path prefixed with prefix. */
+    static void flatten(String treeID, String prefix, Map<String, String> files) {
+        for (Map.Entry<String, Entry> entry : read(treeID).entries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.type == BLOB) {
+                files.put(prefix + entry.getKey(), value.id);
+            } else {
+                flatten(value.id, prefix + entry.getKey() + "/", files);
+            }
+        }
+    }
+
+    /* Add to diff the files which differ between the trees with IDs thisID and otherID,
+     * in the format of Commit.compareDiff. Identical subtrees are skipped without being read. */
+    static void diff(String thisID, String otherID, String prefix, Map<String, String> diff) {
+        if (thisID.equals(otherID)) {
+            return;
+        }
+        Iterator<Map.Entry<String, Entry>> thisIter = read(thisID).entries.entrySet().iterator();
+        Iterator<Map.Entry<String, Entry>> otherIter = read(otherID).entries.entrySet().iterator();
+        Map.Entry<String, Entry> thisEntry = thisIter.hasNext() ? thisIter.next() : null;
+        Map.Entry<String, Entry> otherEntry = otherIter.hasNext() ? otherIter.next() : null;
+        while (thisEntry != null || otherEntry != null) {
+            int cmp = thisEntry == null ? 1 : otherEntry == null ? -1
+                    : thisEntry.getKey().compareTo(otherEntry.getKey());
+            if (cmp < 0) {
+                mark(thisEntry, prefix, "deleted", diff);
+                thisEntry = thisIter.hasNext() ? thisIter.next() : null;
+            } else if (cmp > 0) {
+                mark(otherEntry, prefix, "added", diff);
+                otherEntry = otherIter.hasNext() ? otherIter.next() : null;
+            } else {
+                Entry thisValue = thisEntry.getValue();
+                Entry otherValue = otherEntry.getValue();
+                if (thisValue.type == TREE && otherValue.type == TREE) {
+                    diff(thisValue.id, otherValue.id, prefix + thisEntry.getKey() + "/", diff);
+                } else if (thisValue.type == BLOB && otherValue.type == BLOB) {
+                    if (!thisValue.id.equals(otherValue.id)) {
+                        diff.put(prefix + thisEntry.getKey(), otherValue.id + ",modified");
+                    }
+                } else {
+                    /* A file replaced by a directory of the same name, or the other way round. */
+                    mark(thisEntry, prefix, "deleted", diff);
+                    mark(otherEntry, prefix, "added", diff);
+                }
+                thisEntry = thisIter.hasNext() ? thisIter.next() : null;
+                otherEntry = otherIter.hasNext() ? otherIter.next() : null;
+            }
+        }
+    }
+
+    /* Add every file under entry to diff with the given kind of change. */
+    private static void mark(Map.Entry<String, Entry> entry, String prefix, String kind,
+                             Map<String, String> diff) {
+        Entry value = entry.getValue();
+        if (value.type == BLOB) {
+            diff.put(prefix + entry.getKey(), value.id + "," + kind);
+            return;
+        }
+        Map<String, String> files = new TreeMap<>();
+        flatten(value.id, prefix + entry.getKey() + "/", files);
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            diff.put(file.getKey(), file.getValue() + "," + kind);
+        }
+    }
+
+    /* Add the IDs of the subtrees of the tree with given ID to result. */
+    static void subtrees(String treeID, Collection<String> result) {
+        for (Entry entry : read(treeID).entries.values()) {
+            if (entry.type == TREE) {
+                result.add(entry.id);
+            }
+        }
+    }
+
+    /* Add the IDs of the blobs of the tree with given ID to blobs, and those of its subtrees to trees. */
+    static void children(String treeID, Collection<String> blobs, Collection<String> trees) {
+        for (Entry entry : read(treeID).entries.values()) {
+            (entry.type == TREE ? trees : blobs).add(entry.id);
+        }
+    }
+
+    /* Return the tree with given ID. */
+    @SuppressWarnings("try")
+    static Tree read(String treeID) {
+        try (Trace.Span span = Trace.start(Trace.READ)) {
+            byte[] data = Pack.read(treeID);
+            if (data == null) {
+                data = Pack.readAll(ObjectStore.open(treeID));
+            }
+            BinaryFormat.Reader in = new BinaryFormat.Reader(data, MAGIC);
+            if (in.version() != VERSION) {
+                throw Utils.error("Unsupported tree version %d.", in.version());
+            }
+            Tree tree = new Tree();
+            int count = in.readCount();
+            for (int i = 0; i < count; i += 1) {
+                String name = in.readString();
+                int type = in.readByte();
+                tree.entries.put(name, new Entry(type, in.readId()));
+            }
+            return tree;
+        }
+    }
+
+    /* Write this tree to the object store, and return its ID. */
+    private String store() {
+        BinaryFormat.Writer out = new BinaryFormat.Writer(MAGIC, VERSION);
+        out.writeVarint(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeByte(entry.getValue().type);
+            out.writeId(entry.getValue().id);
+        }
+        byte[] data = out.toByteArray();
+        String id = Utils.sha1(data);
+        ObjectStore.put(id, new ByteArrayInputStream(data));
+        return id;
+    }
+}
@@ -1,21 +1,26 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -31,29 +36,92 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Size of the buffer used when hashing or copying files, so that
+     *  heap use stays bounded regardless of the size of the file. */
+    static final int IO_BUFFER_SIZE = 1 << 16;
+
     /* SHA-1 HASH VALUES. */
 
+    /** Files larger than this many bytes are hashed from memory-mapped
+     *  regions of at most MAP_REGION bytes, rather than read. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_REGION = 1 << 28;
+
+    /** The lower-case hexadecimal digits, and the value of each ASCII
+     *  character as a hexadecimal digit (-1 if it is not one). */
+    private static final byte[] HEX_DIGITS =
+        "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    /** A SHA-1 digest with the buffers used to feed it. Each thread reuses
+     *  its own, so that hashing allocates nothing but its result. */
+    private static class Hasher {
+        private final MessageDigest md;
+        private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+        private final byte[] bytes = new byte[IO_BUFFER_SIZE];
+        private final byte[] result = new byte[UID_LENGTH / 2];
+        private boolean busy;
+
+        Hasher() {
+            try {
+                md = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        }
+    }
+
+    private static final ThreadLocal<Hasher> HASHERS =
+        ThreadLocal.withInitial(Hasher::new);
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
+     *  be any mixture of byte arrays, ByteBuffers (whose remaining bytes
+     *  are consumed), Strings, Files and InputStreams.  The contents of a
+     *  File or InputStream are streamed through a bounded buffer, or
+     *  mapped into memory for large files. */
+    @SuppressWarnings("try")
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
+        Hasher hasher = HASHERS.get();
+        if (hasher.busy) {
+            /* Only if a stream being hashed hashes something itself. */
+            hasher = new Hasher();
+        }
+        hasher.busy = true;
+        try (Trace.Span span = Trace.start(Trace.HASH)) {
+            MessageDigest md = hasher.md;
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    Trace.hashed(((byte[]) val).length);
+                } else if (val instanceof ByteBuffer) {
+                    Trace.hashed(((ByteBuffer) val).remaining());
+                    md.update((ByteBuffer) val);
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    updateDigest(hasher, (String) val);
+                } else if (val instanceof File) {
+                    updateDigest(hasher, (File) val);
+                } else if (val instanceof InputStream) {
+                    updateDigest(hasher, (InputStream) val);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            md.digest(hasher.result, 0, hasher.result.length);
+            return toHex(hasher.result);
+        } catch (DigestException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            hasher.md.reset();
+            hasher.busy = false;
         }
     }
 
@@ -63,6 +131,134 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the 20 bytes denoted by the hexadecimal SHA-1 UID ID. */
+    static byte[] fromHex(String id) {
+        byte[] result = new byte[id.length() / 2];
+        fromHex(id, result, 0);
+        return result;
+    }
+
+    /** Stores the bytes denoted by the hexadecimal numeral ID into RESULT,
+     *  starting at OFFSET. */
+    static void fromHex(String id, byte[] result, int offset) {
+        for (int i = 0; i < id.length() / 2; i += 1) {
+            result[offset + i] = (byte) (hexValue(id, 2 * i) << 4 | hexValue(id, 2 * i + 1));
+        }
+    }
+
+    private static int hexValue(String id, int index) {
+        char c = id.charAt(index);
+        int value = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("not a hexadecimal numeral: " + id);
+        }
+        return value;
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /** Returns the LENGTH bytes of BYTES starting at OFFSET as a lower-case
+     *  hexadecimal numeral. */
+    static String toHex(byte[] bytes, int offset, int length) {
+        byte[] digits = new byte[2 * length];
+        for (int i = 0; i < length; i += 1) {
+            int b = bytes[offset + i];
+            digits[2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+            digits[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(digits, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Feed the UTF-8 encoding of S into the digest of HASHER, encoding
+     *  it into the buffer of HASHER rather than a new array.  Unpaired
+     *  surrogates are encoded as '?', as String.getBytes does. */
+    private static void updateDigest(Hasher hasher, String s) {
+        byte[] out = hasher.bytes;
+        int n = 0;
+        long total = 0;
+        for (int i = 0; i < s.length(); i += 1) {
+            if (n > out.length - 4) {
+                hasher.md.update(out, 0, n);
+                total += n;
+                n = 0;
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xc0 | c >> 6);
+                out[n++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                    i += 1;
+                    out[n++] = (byte) (0xf0 | cp >> 18);
+                    out[n++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    out[n++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    out[n++] = (byte) (0x80 | cp & 0x3f);
+                } else {
+                    out[n++] = '?';
+                }
+            } else {
+                out[n++] = (byte) (0xe0 | c >> 12);
+                out[n++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[n++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        hasher.md.update(out, 0, n);
+        Trace.hashed(total + n);
+    }
+
+    /** Feed the contents of FILE into the digest of HASHER, through its
+     *  buffer, or from memory-mapped regions if FILE is large.
+     *  Throws IllegalArgumentException in case of problems. */
+    private static void updateDigest(Hasher hasher, File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size > MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_REGION) {
+                    long length = Math.min(MAP_REGION, size - position);
+                    hasher.md.update(in.map(FileChannel.MapMode.READ_ONLY, position, length));
+                    Trace.hashed(length);
+                }
+                return;
+            }
+            ByteBuffer buffer = hasher.buffer;
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                Trace.hashed(buffer.remaining());
+                hasher.md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Feed the contents of IN into the digest of HASHER, IO_BUFFER_SIZE
+     *  bytes at a time.  Throws IllegalArgumentException in case of
+     *  problems. */
+    private static void updateDigest(Hasher hasher, InputStream in) {
+        try {
+            int n;
+            while ((n = in.read(hasher.bytes)) != -1) {
+                hasher.md.update(hasher.bytes, 0, n);
+                Trace.hashed(n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -113,8 +309,9 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  a String, a byte array, or a File or InputStream whose contents are
+     *  streamed into FILE.  Throws IllegalArgumentException in case of
+     *  problems. */
     static void writeContents(File file, Object... contents) {
         try {
             if (file.isDirectory()) {
@@ -126,6 +323,10 @@ class Utils {
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
+                } else if (obj instanceof File) {
+                    Files.copy(((File) obj).toPath(), str);
+                } else if (obj instanceof InputStream) {
+                    ((InputStream) obj).transferTo(str);
                 } else {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
@@ -136,6 +337,33 @@ class Utils {
         }
     }
 
+    /** Copy the contents of SOURCE to DEST, creating or overwriting DEST as
+     *  needed.  The copy is done channel to channel, so the contents never
+     *  pass through the Java heap.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void copyContents(File source, File dest) {
+        if (!source.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        if (dest.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest.toPath(),
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -152,6 +380,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -230,6 +474,25 @@ class Utils {
         return new GitletException(String.format(msg, args));
     }
 
+    /** Thrown by exit to end the running command, see Main.execute. */
+    static class ExitException extends RuntimeException {
+        private static final long serialVersionUID = 6582724292930691691L;
+
+        /** The exit status of the command. */
+        final int status;
+
+        ExitException(int status) {
+            super("exit " + status, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /** End the running command with exit status STATUS. Unlike
+     *  System.exit, this leaves a daemon serving the command running. */
+    static void exit(int status) {
+        throw new ExitException(status);
+    }
+
     /** Print a message composed from MSG and ARGS as for the String.format
      *  method, followed by a newline. */
     static void message(String msg, Object... args) {